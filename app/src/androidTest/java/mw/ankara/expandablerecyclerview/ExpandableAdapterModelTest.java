@@ -0,0 +1,481 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs random operations on an {@link ExpandableAdapter} and checks it against a brute-force
+ * model: positions are resolved again from the flattened data, and the notifications are
+ * replayed on the previous rows, which must give the new ones.
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+public class ExpandableAdapterModelTest extends AndroidTestCase {
+
+    /**
+     * row of a notification replay whose content is not known yet
+     */
+    private static final long INSERTED = -1;
+
+    private static class Group {
+
+        final long mId;
+
+        final List<Long> mChildren = new ArrayList<>();
+
+        Group(long id) {
+            mId = id;
+        }
+    }
+
+    private static class ModelListAdapter extends ExpandableAdapterTest.TestListAdapter {
+
+        final List<Group> mGroups = new ArrayList<>();
+
+        ModelListAdapter() {
+            super(0, 0);
+        }
+
+        @Override
+        public int getGroupCount() {
+            return mGroups.size();
+        }
+
+        @Override
+        public int getChildCount(int groupPosition) {
+            return mGroups.get(groupPosition).mChildren.size();
+        }
+    }
+
+    /**
+     * replays the notifications on the rows of the last check, until the whole data set changes
+     */
+    private static class ReplayObserver extends RecyclerView.AdapterDataObserver {
+
+        final List<Long> mRows = new ArrayList<>();
+
+        boolean mDataSetChanged;
+
+        int mNotificationCount;
+
+        @Override
+        public void onChanged() {
+            ++mNotificationCount;
+            mDataSetChanged = true;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            ++mNotificationCount;
+            if (mDataSetChanged) {
+                return;
+            }
+            assertTrue(positionStart >= 0 && positionStart + itemCount <= mRows.size());
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            ++mNotificationCount;
+            if (mDataSetChanged) {
+                return;
+            }
+            assertTrue(positionStart >= 0 && positionStart <= mRows.size());
+            mRows.addAll(positionStart, Collections.nCopies(itemCount, INSERTED));
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            ++mNotificationCount;
+            if (mDataSetChanged) {
+                return;
+            }
+            assertTrue(positionStart >= 0 && positionStart + itemCount <= mRows.size());
+            mRows.subList(positionStart, positionStart + itemCount).clear();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            ++mNotificationCount;
+            if (mDataSetChanged) {
+                return;
+            }
+            assertEquals(1, itemCount);
+            mRows.add(toPosition, mRows.remove(fromPosition));
+        }
+    }
+
+    private final Random mRandom = new Random(3);
+
+    private ModelListAdapter mListAdapter;
+
+    private ExpandableAdapter mAdapter;
+
+    private ReplayObserver mObserver;
+
+    private long mNextId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mListAdapter = new ModelListAdapter();
+        for (int i = 0; i < 30; ++i) {
+            mListAdapter.mGroups.add(newGroup());
+        }
+        mAdapter = new ExpandableAdapter(mListAdapter);
+        mObserver = new ReplayObserver();
+        // nothing to replay on yet
+        mObserver.mDataSetChanged = true;
+        mAdapter.registerAdapterDataObserver(mObserver);
+        check();
+    }
+
+    private Group newGroup() {
+        Group group = new Group(mNextId++);
+        int childCount = mRandom.nextInt(5);
+        for (int i = 0; i < childCount; ++i) {
+            group.mChildren.add(mNextId++);
+        }
+        return group;
+    }
+
+    /**
+     * group rows are their ids, child rows their ids with the top bit set
+     */
+    private List<Long> flatten() {
+        List<Long> rows = new ArrayList<>();
+        for (int group = 0; group < mListAdapter.mGroups.size(); ++group) {
+            Group item = mListAdapter.mGroups.get(group);
+            rows.add(item.mId);
+            if (mAdapter.isGroupExpanded(group)) {
+                for (long child : item.mChildren) {
+                    rows.add(child | Long.MIN_VALUE);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private void check() {
+        List<Long> rows = flatten();
+        assertEquals(rows.size(), mAdapter.getItemCount());
+
+        if (!mObserver.mDataSetChanged) {
+            assertEquals(rows.size(), mObserver.mRows.size());
+            for (int i = 0; i < rows.size(); ++i) {
+                long row = mObserver.mRows.get(i);
+                if (row != INSERTED) {
+                    assertEquals("row " + i, rows.get(i).longValue(), row);
+                }
+            }
+        }
+        mObserver.mRows.clear();
+        mObserver.mRows.addAll(rows);
+        mObserver.mDataSetChanged = false;
+
+        // the cache is patched by the operations, look up in random order so it's filled
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < rows.size(); ++i) {
+            positions.add(i);
+        }
+        Collections.shuffle(positions, mRandom);
+        PositionInfo out = new PositionInfo();
+        for (int round = 0; round < 2; ++round) {
+            for (int position : positions) {
+                assertPosition(rows, position, mAdapter.getUnflattenedPos(position, out));
+            }
+            // and in order, stepping from the last position
+            Collections.sort(positions);
+        }
+    }
+
+    private void assertPosition(List<Long> rows, int position, PositionInfo info) {
+        assertEquals(position, info.getPosition());
+        Group group = mListAdapter.mGroups.get(info.getGroup());
+        long row = rows.get(position);
+        if (info.getType() == PositionInfo.PACKED_POSITION_TYPE_GROUP) {
+            assertEquals(-1, info.getChild());
+            assertEquals(group.mId, row);
+        } else {
+            assertEquals(PositionInfo.PACKED_POSITION_TYPE_CHILD, info.getType());
+            assertEquals(group.mChildren.get(info.getChild()) | Long.MIN_VALUE, row);
+        }
+    }
+
+    private int randomGroups(int count) {
+        return count == 0 ? 0 : mRandom.nextInt(count);
+    }
+
+    private void randomOperation() {
+        List<Group> groups = mListAdapter.mGroups;
+        int group = randomGroups(groups.size());
+        switch (mRandom.nextInt(9)) {
+            case 0:
+                if (!groups.isEmpty()) {
+                    mAdapter.expandGroup(group, false);
+                }
+                break;
+            case 1:
+                if (!groups.isEmpty()) {
+                    mAdapter.collapseGroup(group, false);
+                }
+                break;
+            case 2: {
+                int count = 1 + mRandom.nextInt(3);
+                int start = randomGroups(groups.size() + 1);
+                for (int i = 0; i < count; ++i) {
+                    groups.add(start + i, newGroup());
+                }
+                mListAdapter.notifyGroupRangeInserted(start, count);
+                break;
+            }
+            case 3: {
+                if (groups.size() < 2) {
+                    break;
+                }
+                int count = 1 + mRandom.nextInt(Math.min(3, groups.size() - group));
+                groups.subList(group, group + count).clear();
+                mListAdapter.notifyGroupRangeRemoved(group, count);
+                break;
+            }
+            case 4: {
+                if (groups.isEmpty()) {
+                    break;
+                }
+                List<Long> children = groups.get(group).mChildren;
+                int start = mRandom.nextInt(children.size() + 1);
+                int count = 1 + mRandom.nextInt(3);
+                for (int i = 0; i < count; ++i) {
+                    children.add(start + i, mNextId++);
+                }
+                mListAdapter.notifyChildRangeInserted(group, start, count);
+                break;
+            }
+            case 5: {
+                if (groups.isEmpty() || groups.get(group).mChildren.isEmpty()) {
+                    break;
+                }
+                List<Long> children = groups.get(group).mChildren;
+                int start = mRandom.nextInt(children.size());
+                int count = 1 + mRandom.nextInt(children.size() - start);
+                children.subList(start, start + count).clear();
+                mListAdapter.notifyChildRangeRemoved(group, start, count);
+                break;
+            }
+            case 6: {
+                if (groups.isEmpty()) {
+                    break;
+                }
+                int to = randomGroups(groups.size());
+                groups.add(to, groups.remove(group));
+                mListAdapter.notifyGroupMoved(group, to);
+                break;
+            }
+            case 7: {
+                if (groups.isEmpty() || groups.get(group).mChildren.isEmpty()) {
+                    break;
+                }
+                List<Long> children = groups.get(group).mChildren;
+                int from = mRandom.nextInt(children.size());
+                int to = mRandom.nextInt(children.size());
+                children.add(to, children.remove(from));
+                mListAdapter.notifyChildMoved(group, from, to);
+                break;
+            }
+            default:
+                if (!groups.isEmpty() && !groups.get(group).mChildren.isEmpty()) {
+                    mListAdapter.notifyChildRangeChanged(group, 0,
+                            groups.get(group).mChildren.size(), null);
+                }
+                break;
+        }
+    }
+
+    public void testSingleOperations() {
+        for (int i = 0; i < 1000; ++i) {
+            randomOperation();
+            check();
+        }
+    }
+
+    /**
+     * batched notifications are merged, replaying them must still give the rows
+     */
+    public void testBatchedOperations() {
+        for (int i = 0; i < 200; ++i) {
+            mListAdapter.beginBatch();
+            int count = 1 + mRandom.nextInt(6);
+            for (int j = 0; j < count; ++j) {
+                randomOperation();
+            }
+            mListAdapter.endBatch();
+            check();
+        }
+    }
+
+    /**
+     * snapshots drawn from the current one by random removals, insertions and moves of groups
+     * and children, dispatched as diffs
+     */
+    public void testDiffedSnapshots() {
+        for (int i = 0; i < 300; ++i) {
+            final List<Group> oldGroups = mListAdapter.mGroups;
+            final List<Group> newGroups = new ArrayList<>();
+            for (Group group : oldGroups) {
+                Group copy = new Group(group.mId);
+                copy.mChildren.addAll(group.mChildren);
+                newGroups.add(copy);
+            }
+            for (int j = mRandom.nextInt(6); j > 0; --j) {
+                mutate(newGroups);
+            }
+            if (mRandom.nextInt(8) == 0) {
+                Collections.shuffle(newGroups, mRandom);
+            }
+
+            ExpandableDiff.Result result = ExpandableDiff.calculate(new ExpandableDiff.Callback() {
+                @Override
+                public int getOldGroupCount() {
+                    return oldGroups.size();
+                }
+
+                @Override
+                public int getNewGroupCount() {
+                    return newGroups.size();
+                }
+
+                @Override
+                public int getOldChildCount(int oldGroup) {
+                    return oldGroups.get(oldGroup).mChildren.size();
+                }
+
+                @Override
+                public int getNewChildCount(int newGroup) {
+                    return newGroups.get(newGroup).mChildren.size();
+                }
+
+                @Override
+                public long getOldGroupId(int oldGroup) {
+                    return oldGroups.get(oldGroup).mId;
+                }
+
+                @Override
+                public long getNewGroupId(int newGroup) {
+                    return newGroups.get(newGroup).mId;
+                }
+
+                @Override
+                public long getOldChildId(int oldGroup, int oldChild) {
+                    return oldGroups.get(oldGroup).mChildren.get(oldChild);
+                }
+
+                @Override
+                public long getNewChildId(int newGroup, int newChild) {
+                    return newGroups.get(newGroup).mChildren.get(newChild);
+                }
+
+                @Override
+                public boolean areGroupContentsTheSame(int oldGroup, int newGroup) {
+                    return true;
+                }
+
+                @Override
+                public boolean areChildContentsTheSame(int oldGroup, int oldChild,
+                        int newGroup, int newChild) {
+                    return true;
+                }
+            });
+            mListAdapter.mGroups.clear();
+            mListAdapter.mGroups.addAll(newGroups);
+            result.dispatchUpdatesTo(mListAdapter);
+            assertFalse(mObserver.mDataSetChanged);
+            check();
+
+            randomOperation();
+            check();
+        }
+    }
+
+    private void mutate(List<Group> groups) {
+        int group = randomGroups(groups.size());
+        switch (mRandom.nextInt(4)) {
+            case 0:
+                groups.add(randomGroups(groups.size() + 1), newGroup());
+                break;
+            case 1:
+                if (groups.size() > 1) {
+                    groups.remove(group);
+                }
+                break;
+            case 2:
+                if (!groups.isEmpty()) {
+                    groups.add(randomGroups(groups.size()), groups.remove(group));
+                }
+                break;
+            default:
+                if (!groups.isEmpty()) {
+                    List<Long> children = groups.get(group).mChildren;
+                    if (!children.isEmpty() && mRandom.nextBoolean()) {
+                        children.add(mRandom.nextInt(children.size()),
+                                children.remove(mRandom.nextInt(children.size())));
+                    } else if (!children.isEmpty() && mRandom.nextBoolean()) {
+                        children.remove(mRandom.nextInt(children.size()));
+                    } else {
+                        children.add(mRandom.nextInt(children.size() + 1), mNextId++);
+                    }
+                }
+                break;
+        }
+    }
+
+    public void testBulkExpandNotifiesRanges() {
+        for (int i = 0; i < 100; ++i) {
+            int[] groups = new int[mRandom.nextInt(8)];
+            for (int j = 0; j < groups.length; ++j) {
+                groups[j] = randomGroups(mListAdapter.mGroups.size());
+            }
+            mObserver.mNotificationCount = 0;
+            int changed = mAdapter.setGroupsExpanded(groups, mRandom.nextBoolean());
+            assertTrue(mObserver.mNotificationCount <= changed);
+            assertFalse(mObserver.mDataSetChanged);
+            check();
+
+            randomOperation();
+            check();
+        }
+    }
+
+    public void testBulkExpandOfManyRangesChangesTheDataSet() {
+        mListAdapter.mGroups.clear();
+        mListAdapter.notifyGroupRangeRemoved(0, 30);
+        for (int i = 0; i < 70; ++i) {
+            Group group = new Group(mNextId++);
+            group.mChildren.add(mNextId++);
+            mListAdapter.mGroups.add(group);
+        }
+        mListAdapter.notifyGroupRangeInserted(0, 70);
+        check();
+
+        // every other group, so no two ranges touch
+        int[] groups = new int[35];
+        for (int i = 0; i < groups.length; ++i) {
+            groups[i] = i * 2;
+        }
+        // groups show up expanded
+        assertEquals(70, mAdapter.setGroupsExpanded(null, false));
+        check();
+        mAdapter.setGroupsExpanded(groups, true);
+        assertTrue(mObserver.mDataSetChanged);
+        check();
+
+        mObserver.mNotificationCount = 0;
+        assertEquals(35, mAdapter.setGroupsExpanded(null, false));
+        assertEquals(1, mObserver.mNotificationCount);
+        check();
+    }
+}
@@ -0,0 +1,141 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.os.Debug;
+import android.support.v7.widget.RecyclerView.ViewHolder;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.HashSet;
+
+/**
+ * @author masa
+ * @since 10/17/26
+ */
+public class ExpandableAdapterTest extends AndroidTestCase {
+
+    public void testLookupsDoNotAllocate() {
+        ExpandableAdapter adapter = new ExpandableAdapter(new TestListAdapter(1000, 5));
+        ViewHolder holder = new ViewHolder(new View(getContext())) {
+        };
+        PositionInfo out = new PositionInfo();
+
+        // warm up, so class loading and lazy index building are not counted
+        scroll(adapter, holder, out);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        scroll(adapter, holder, out);
+        int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        assertEquals(0, allocations);
+    }
+
+    public void testItemIdsOutOfTheirBitsThrow() {
+        long[] groupIds = {0, 1, Integer.MAX_VALUE};
+        long[] childIds = {0, 1, 0xFFFFFFFFL};
+        HashSet<Long> ids = new HashSet<>();
+        for (long groupId : groupIds) {
+            assertTrue(ids.add(ExpandableAdapter.getGroupItemId(groupId)));
+            for (long childId : childIds) {
+                assertTrue(ids.add(ExpandableAdapter.getChildItemId(groupId, childId)));
+            }
+        }
+
+        // these were truncated into the ids of group 0 and of child 0 of group 0
+        assertIdThrows(0x80000000L, 0);
+        assertIdThrows(-1, 0);
+        assertIdThrows(0, 0x100000000L);
+        assertIdThrows(0, -1);
+    }
+
+    private static void assertIdThrows(long groupId, long childId) {
+        try {
+            ExpandableAdapter.getChildItemId(groupId, childId);
+            fail("child id " + groupId + " " + childId);
+        } catch (RuntimeException e) {
+            // out of range
+        }
+    }
+
+    private static void scroll(ExpandableAdapter adapter, ViewHolder holder, PositionInfo out) {
+        final int count = adapter.getItemCount();
+        for (int i = 0; i < count; ++i) {
+            adapter.getItemViewType(i);
+            adapter.onBindViewHolder(holder, i);
+            adapter.getUnflattenedPos(count - 1 - i, out);
+        }
+    }
+
+    static class TestListAdapter extends ExpandableListAdapter<ViewHolder, ViewHolder> {
+
+        private final int mGroupCount;
+
+        private final int mChildCount;
+
+        TestListAdapter(int groupCount, int childCount) {
+            mGroupCount = groupCount;
+            mChildCount = childCount;
+        }
+
+        @Override
+        public int getGroupCount() {
+            return mGroupCount;
+        }
+
+        @Override
+        public int getChildCount(int groupPosition) {
+            return mChildCount;
+        }
+
+        @Override
+        public int getGroupItemViewType(int groupPosition) {
+            return 0;
+        }
+
+        @Override
+        public int getChildItemViewType(int groupPosition, int childPosition) {
+            return 0;
+        }
+
+        @Override
+        public ViewHolder onCreateGroupViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public ViewHolder onCreateChildViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindGroupViewHolder(ViewHolder holder, int groupPosition) {
+        }
+
+        @Override
+        public void onBindChildViewHolder(ViewHolder holder, int groupPosition,
+                int childPosition) {
+        }
+
+        @Override
+        public boolean onCheckCanExpandOrCollapseGroup(ViewHolder holder, int groupPosition,
+                int x, int y, boolean expand) {
+            return false;
+        }
+
+        @Override
+        public boolean onHookGroupExpand(int groupPosition, boolean fromUser) {
+            return true;
+        }
+
+        @Override
+        public boolean onHookGroupCollapse(int groupPosition, boolean fromUser) {
+            return true;
+        }
+
+        @Override
+        public void onChildSwiped(int group, int child, int position) {
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.ViewHolder;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.HashSet;
+
+/**
+ * @author masa
+ * @since 10/17/26
+ */
+public class ExpandableRecyclerViewTest extends AndroidTestCase {
+
+    public void testSwapToStableIdsWhileObserved() {
+        ExpandableRecyclerView recyclerView = new ExpandableRecyclerView(getContext());
+        recyclerView.setAdapter(new ViewListAdapter(20, 3));
+        recyclerView.addHeader(new ViewItem());
+        recyclerView.setStickyGroupsEnabled(true);
+        GroupSectionIndexer indexer = new GroupSectionIndexer(recyclerView) {
+            @Override
+            protected Object getSection(int group) {
+                return group;
+            }
+        };
+        assertEquals(20, indexer.getSections().length);
+        // the sticky decoration observes the connector once drawn
+        recyclerView.expandGroup(0);
+        layoutAndDraw(recyclerView);
+
+        recyclerView.setAdapter(new StableListAdapter(10, 2));
+        RecyclerView.Adapter adapter = recyclerView.getAdapter();
+        assertTrue(adapter.hasStableIds());
+        assertEquals(1, recyclerView.getHeaderCount());
+        assertEquals(10, indexer.getSections().length);
+        recyclerView.expandAll();
+        layoutAndDraw(recyclerView);
+
+        HashSet<Long> ids = new HashSet<>();
+        for (int i = 0; i < adapter.getItemCount(); ++i) {
+            assertTrue(ids.add(adapter.getItemId(i)));
+        }
+
+        recyclerView.setAdapter(new ViewListAdapter(5, 1));
+        assertFalse(recyclerView.getAdapter().hasStableIds());
+        assertEquals(1, recyclerView.getHeaderCount());
+        assertEquals(5, indexer.getSections().length);
+        layoutAndDraw(recyclerView);
+        indexer.detach();
+    }
+
+    public void testSavedStateSurvivesParcel() {
+        ExpandableRecyclerView recyclerView = new ExpandableRecyclerView(getContext());
+        recyclerView.setAdapter(new ViewListAdapter(70, 2));
+        recyclerView.collapseAll();
+        recyclerView.expandGroup(3);
+        recyclerView.expandGroup(66);
+        Parcelable state = recyclerView.onSaveInstanceState();
+
+        // as the framework restores it, and as creators without a class loader do
+        Parcel parcel = Parcel.obtain();
+        parcel.writeParcelable(state, 0);
+        parcel.setDataPosition(0);
+        Parcelable restored = parcel.readParcelable(getClass().getClassLoader());
+        parcel.recycle();
+        assertRestores(restored);
+
+        parcel = Parcel.obtain();
+        state.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        restored = ExpandableRecyclerView.SavedState.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+        assertRestores(restored);
+    }
+
+    private void assertRestores(Parcelable state) {
+        assertTrue(state instanceof ExpandableRecyclerView.SavedState);
+        assertNotNull(((ExpandableRecyclerView.SavedState) state).getSuperState());
+
+        ExpandableRecyclerView recyclerView = new ExpandableRecyclerView(getContext());
+        recyclerView.onRestoreInstanceState(state);
+        recyclerView.setAdapter(new ViewListAdapter(70, 2));
+        for (int group = 0; group < 70; ++group) {
+            assertEquals(group == 3 || group == 66, recyclerView.isGroupExpanded(group));
+        }
+    }
+
+    private static void layoutAndDraw(RecyclerView recyclerView) {
+        recyclerView.measure(
+                View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(800, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 480, 800);
+        recyclerView.draw(new Canvas(Bitmap.createBitmap(480, 800, Bitmap.Config.ARGB_8888)));
+    }
+
+    private static ViewHolder createHolder(ViewGroup parent) {
+        View view = new View(parent.getContext());
+        view.setMinimumHeight(40);
+        return new ViewHolder(view) {
+        };
+    }
+
+    private static class ViewListAdapter extends ExpandableAdapterTest.TestListAdapter {
+
+        ViewListAdapter(int groupCount, int childCount) {
+            super(groupCount, childCount);
+        }
+
+        @Override
+        public ViewHolder onCreateGroupViewHolder(ViewGroup parent, int viewType) {
+            return createHolder(parent);
+        }
+
+        @Override
+        public ViewHolder onCreateChildViewHolder(ViewGroup parent, int viewType) {
+            return createHolder(parent);
+        }
+    }
+
+    private static class StableListAdapter extends ViewListAdapter {
+
+        StableListAdapter(int groupCount, int childCount) {
+            super(groupCount, childCount);
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public long getGroupId(int groupPosition) {
+            return 100 + groupPosition;
+        }
+
+        @Override
+        public long getChildId(int groupPosition, int childPosition) {
+            return childPosition;
+        }
+    }
+
+    private static class ViewItem extends FixedItem<ViewHolder> {
+
+        @Override
+        public int getItemViewType() {
+            return 0;
+        }
+
+        @Override
+        public ViewHolder onCreateViewHolder(ViewGroup parent) {
+            return createHolder(parent);
+        }
+
+        @Override
+        public void onBindViewHolder(ViewHolder holder) {
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Companion of an {@link ExpandableListAdapter} which holds its groups as immutable snapshots.
+ * Snapshots can be submitted from any thread, they are diffed against the current one by
+ * {@link ExpandableDiff} on a background executor and committed on the main thread. When
+ * snapshots are submitted faster than they are diffed, the stale ones are dropped and only the
+ * latest one is committed.
+ * <p>
+ * <p>The position index of the new snapshot is built on the executor too, committing swaps it in
+ * together with the snapshot, so the main thread only carries the expanded state over.</p>
+ * <p>
+ * <p>The adapter should read its data from {@link #getCurrentList()}, and submitted lists and
+ * children lists must not be modified afterwards.</p>
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+public class AsyncExpandableListDiffer<G, C> {
+
+    private static ExecutorService sDiffExecutor;
+
+    private final ExpandableListAdapter<?, ?> mAdapter;
+
+    private final ItemCallback<G, C> mItemCallback;
+
+    private final Executor mDiffExecutor;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * generation of the latest submitted snapshot, results of older ones are dropped
+     */
+    private final AtomicInteger mMaxScheduledGeneration = new AtomicInteger();
+
+    private volatile List<G> mList = Collections.emptyList();
+
+    public AsyncExpandableListDiffer(ExpandableListAdapter<?, ?> adapter,
+            ItemCallback<G, C> itemCallback) {
+        this(adapter, itemCallback, getDefaultDiffExecutor());
+    }
+
+    /**
+     * @param diffExecutor executor to diff on, a single thread one skips stale snapshots best
+     */
+    public AsyncExpandableListDiffer(ExpandableListAdapter<?, ?> adapter,
+            ItemCallback<G, C> itemCallback, Executor diffExecutor) {
+        mAdapter = adapter;
+        mItemCallback = itemCallback;
+        mDiffExecutor = diffExecutor;
+    }
+
+    private static synchronized ExecutorService getDefaultDiffExecutor() {
+        if (sDiffExecutor == null) {
+            sDiffExecutor = Executors.newSingleThreadExecutor();
+        }
+        return sDiffExecutor;
+    }
+
+    /**
+     * @return the committed snapshot, which the adapter is showing
+     */
+    public List<G> getCurrentList() {
+        return mList;
+    }
+
+    /**
+     * Submit a new snapshot, may be called from any thread.
+     *
+     * @param newList the new groups, null for none
+     */
+    public void submitList(List<G> newList) {
+        final List<G> list = newList != null ? newList : Collections.<G>emptyList();
+        diff(list, mMaxScheduledGeneration.incrementAndGet());
+    }
+
+    /**
+     * diff <code>list</code> against the committed snapshot on the executor, then commit it on
+     * the main thread unless a newer snapshot was submitted meanwhile
+     */
+    private void diff(final List<G> list, final int generation) {
+        mDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // a newer snapshot is waiting, don't bother
+                if (generation != mMaxScheduledGeneration.get()) {
+                    return;
+                }
+
+                final List<G> oldList = mList;
+                if (oldList == list) {
+                    return;
+                }
+
+                // the result comes with the layout of the new snapshot, built here as well
+                final ExpandableDiff.Result result =
+                        ExpandableDiff.calculate(new SnapshotCallback(oldList, list));
+                if (generation != mMaxScheduledGeneration.get()) {
+                    return;
+                }
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mMaxScheduledGeneration.get()) {
+                            return;
+                        }
+
+                        if (mList == oldList) {
+                            commit(list, result);
+                        } else {
+                            // an older snapshot was committed after this one was diffed, the
+                            // latest one is diffed again against it
+                            diff(list, generation);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * show the new snapshot, the adapter swaps in the layout built with the result at once and
+     * only asks the inserted groups whether they are expanded
+     */
+    private void commit(List<G> newList, ExpandableDiff.Result result) {
+        mList = newList;
+        result.dispatchUpdatesTo(mAdapter);
+    }
+
+    /**
+     * adapts two snapshots to {@link ExpandableDiff.Callback}
+     */
+    private class SnapshotCallback extends ExpandableDiff.Callback {
+
+        private final List<G> mOldList;
+
+        private final List<G> mNewList;
+
+        SnapshotCallback(List<G> oldList, List<G> newList) {
+            mOldList = oldList;
+            mNewList = newList;
+        }
+
+        @Override
+        public int getOldGroupCount() {
+            return mOldList.size();
+        }
+
+        @Override
+        public int getNewGroupCount() {
+            return mNewList.size();
+        }
+
+        @Override
+        public int getOldChildCount(int oldGroup) {
+            return mItemCallback.getChildren(mOldList.get(oldGroup)).size();
+        }
+
+        @Override
+        public int getNewChildCount(int newGroup) {
+            return mItemCallback.getChildren(mNewList.get(newGroup)).size();
+        }
+
+        @Override
+        public long getOldGroupId(int oldGroup) {
+            return mItemCallback.getGroupId(mOldList.get(oldGroup));
+        }
+
+        @Override
+        public long getNewGroupId(int newGroup) {
+            return mItemCallback.getGroupId(mNewList.get(newGroup));
+        }
+
+        @Override
+        public long getOldChildId(int oldGroup, int oldChild) {
+            return mItemCallback.getChildId(
+                    mItemCallback.getChildren(mOldList.get(oldGroup)).get(oldChild));
+        }
+
+        @Override
+        public long getNewChildId(int newGroup, int newChild) {
+            return mItemCallback.getChildId(
+                    mItemCallback.getChildren(mNewList.get(newGroup)).get(newChild));
+        }
+
+        @Override
+        public boolean areGroupContentsTheSame(int oldGroup, int newGroup) {
+            return mItemCallback.areGroupContentsTheSame(mOldList.get(oldGroup),
+                    mNewList.get(newGroup));
+        }
+
+        @Override
+        public boolean areChildContentsTheSame(int oldGroup, int oldChild, int newGroup,
+                int newChild) {
+            return mItemCallback.areChildContentsTheSame(
+                    mItemCallback.getChildren(mOldList.get(oldGroup)).get(oldChild),
+                    mItemCallback.getChildren(mNewList.get(newGroup)).get(newChild));
+        }
+
+        @Override
+        public Object getGroupChangePayload(int oldGroup, int newGroup) {
+            return mItemCallback.getGroupChangePayload(mOldList.get(oldGroup),
+                    mNewList.get(newGroup));
+        }
+
+        @Override
+        public Object getChildChangePayload(int oldGroup, int oldChild, int newGroup,
+                int newChild) {
+            return mItemCallback.getChildChangePayload(
+                    mItemCallback.getChildren(mOldList.get(oldGroup)).get(oldChild),
+                    mItemCallback.getChildren(mNewList.get(newGroup)).get(newChild));
+        }
+    }
+
+    /**
+     * Tells groups and children apart, called on the diff executor.
+     */
+    public abstract static class ItemCallback<G, C> {
+
+        public abstract List<C> getChildren(G group);
+
+        /**
+         * @return stable id of the group
+         */
+        public abstract long getGroupId(G group);
+
+        /**
+         * @return stable id of the child, unique within its group
+         */
+        public abstract long getChildId(C child);
+
+        public abstract boolean areGroupContentsTheSame(G oldGroup, G newGroup);
+
+        public abstract boolean areChildContentsTheSame(C oldChild, C newChild);
+
+        /**
+         * @return payload for a partial rebind of a changed group, null by default
+         */
+        public Object getGroupChangePayload(G oldGroup, G newGroup) {
+            return null;
+        }
+
+        /**
+         * @return payload for a partial rebind of a changed child, null by default
+         */
+        public Object getChildChangePayload(C oldChild, C newChild) {
+            return null;
+        }
+    }
+}
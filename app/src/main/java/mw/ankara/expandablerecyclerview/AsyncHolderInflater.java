@@ -0,0 +1,227 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.os.Process;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.ViewHolder;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps a queue of ready ViewHolders per view type, created on a background thread through
+ * {@link RecyclerView.Adapter#createViewHolder}. {@link ExpandableAdapter#onCreateViewHolder}
+ * takes from the queue and falls back to creating the holder on the main thread when it is
+ * empty, every take refills the queue up to its target.
+ * <p>
+ * <p>The adapter's onCreate methods of the types with a target must be safe to call on a
+ * background thread.</p>
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+final class AsyncHolderInflater {
+
+    private static ExecutorService sInflateExecutor;
+
+    /**
+     * set while a holder is created for a queue, the creation goes through
+     * {@link ExpandableAdapter#onCreateViewHolder} and must not take from the queues
+     */
+    private static final ThreadLocal<Boolean> sCreating = new ThreadLocal<>();
+
+    /**
+     * adapter creating the holders, guarded by this
+     */
+    private RecyclerView.Adapter mAdapter;
+
+    private final ViewGroup mParent;
+
+    private final Executor mExecutor;
+
+    /**
+     * ready holders by view type, guarded by this
+     */
+    private final SparseArray<ArrayList<ViewHolder>> mReadyHolders = new SparseArray<>();
+
+    /**
+     * ready holders wanted by view type, guarded by this
+     */
+    private final SparseIntArray mTargets = new SparseIntArray();
+
+    /**
+     * holders being created by view type, guarded by this
+     */
+    private final SparseIntArray mPending = new SparseIntArray();
+
+    /**
+     * bumped on {@link #clear()} so holders created for the dropped targets are thrown away
+     */
+    private int mGeneration;
+
+    private int mHitCount;
+
+    private int mMissCount;
+
+    AsyncHolderInflater(RecyclerView.Adapter adapter, ViewGroup parent, Executor executor) {
+        mAdapter = adapter;
+        mParent = parent;
+        mExecutor = executor != null ? executor : getDefaultInflateExecutor();
+    }
+
+    /**
+     * @return true on a thread creating a holder for a queue
+     */
+    static boolean isCreating() {
+        return sCreating.get() != null;
+    }
+
+    private static synchronized ExecutorService getDefaultInflateExecutor() {
+        if (sInflateExecutor == null) {
+            sInflateExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "ExpandableInflater");
+                }
+            });
+        }
+        return sInflateExecutor;
+    }
+
+    /**
+     * keep <code>count</code> holders of the view type ready, 0 to stop inflating it
+     */
+    synchronized void setTarget(int viewType, int count) {
+        mTargets.put(viewType, count);
+        ArrayList<ViewHolder> ready = mReadyHolders.get(viewType);
+        while (ready != null && ready.size() > count) {
+            ready.remove(ready.size() - 1);
+        }
+        refill(viewType);
+    }
+
+    /**
+     * called on the main thread
+     *
+     * @return a ready holder of the view type, null if the caller should create it
+     */
+    synchronized ViewHolder poll(int viewType) {
+        if (mTargets.get(viewType) == 0 || isCreating()) {
+            return null;
+        }
+
+        ArrayList<ViewHolder> ready = mReadyHolders.get(viewType);
+        ViewHolder holder = ready != null && !ready.isEmpty() ? ready.remove(ready.size() - 1)
+                : null;
+        if (holder != null) {
+            ++mHitCount;
+        } else {
+            ++mMissCount;
+        }
+        refill(viewType);
+        return holder;
+    }
+
+    /**
+     * create the holders with another adapter, the ready ones are dropped and the targets kept
+     */
+    synchronized void setAdapter(RecyclerView.Adapter adapter) {
+        mAdapter = adapter;
+        ++mGeneration;
+        mReadyHolders.clear();
+        mPending.clear();
+        for (int i = 0; i < mTargets.size(); ++i) {
+            refill(mTargets.keyAt(i));
+        }
+    }
+
+    /**
+     * drop all ready holders and targets, the holders being created are dropped when done
+     */
+    synchronized void clear() {
+        ++mGeneration;
+        mReadyHolders.clear();
+        mTargets.clear();
+        mPending.clear();
+    }
+
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    synchronized void resetCounts() {
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+
+    /**
+     * schedule one creation per missing holder, called with the lock held
+     */
+    private void refill(final int viewType) {
+        ArrayList<ViewHolder> ready = mReadyHolders.get(viewType);
+        int missing = mTargets.get(viewType) - mPending.get(viewType)
+                - (ready != null ? ready.size() : 0);
+        if (missing <= 0) {
+            return;
+        }
+
+        mPending.put(viewType, mPending.get(viewType) + missing);
+        final RecyclerView.Adapter adapter = mAdapter;
+        final int generation = mGeneration;
+        for (int i = 0; i < missing; ++i) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ViewHolder holder = null;
+                    sCreating.set(Boolean.TRUE);
+                    try {
+                        holder = adapter.createViewHolder(mParent, viewType);
+                    } finally {
+                        sCreating.remove();
+                        // a failed creation is not pending any more either, the exception
+                        // goes on to the executor as it would on the main thread
+                        offer(generation, viewType, holder);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @param holder null if the creation failed
+     */
+    private synchronized void offer(int generation, int viewType, ViewHolder holder) {
+        if (generation != mGeneration) {
+            return;
+        }
+
+        mPending.put(viewType, mPending.get(viewType) - 1);
+        if (holder == null) {
+            return;
+        }
+
+        ArrayList<ViewHolder> ready = mReadyHolders.get(viewType);
+        if (ready == null) {
+            ready = new ArrayList<>();
+            mReadyHolders.put(viewType, ready);
+        }
+        if (ready.size() < mTargets.get(viewType)) {
+            ready.add(holder);
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package mw.ankara.expandablerecyclerview;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.ViewHolder;
 import android.view.View;
 import android.view.ViewGroup;
+import mw.ankara.expandablerecyclerview.index.ExpandableIndex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author masa
@@ -15,44 +21,51 @@ class ExpandableAdapter extends RecyclerView.Adapter<ViewHolder>
         implements ExpandableDataObserver {
 
     /**
-     * The mask (in packed position representation) for the header
+     * dense view types of groups, children and fixed items, shared through
+     * {@link ExpandableViewPool}
      */
-    private static final int PACKED_TYPE_MASK_HEADER = 0x00008000;
+    private ViewTypeRegistry mViewTypeRegistry = new ViewTypeRegistry();
 
     /**
-     * The mask (in packed position representation) for the footer
+     * recently looked up positions, reused so lookups never allocate
      */
-    private static final int PACKED_TYPE_MASK_FOOTER = 0x80000000;
+    private final PositionCache mPositionCache = new PositionCache();
 
     /**
-     * The shift amount (in packed position representation) for the group
+     * replaced at once by the layout a diff comes with
      */
-    private static final int PACKED_POSITION_SHIFT_FOOTER = 16;
+    private ExpandableIndex mGroupIndex = new ExpandableIndex();
 
-    /**
-     * The mask (in packed position representation) for the child
-     */
-    private static final int PACKED_TYPE_MASK_CHILD = 0x00004000;
+    private final NotifyBatcher mNotifyBatcher = new NotifyBatcher(this);
 
-    /**
-     * The mask (in packed position representation) for the group
-     */
-    private static final int PACKED_TYPE_MASK_GROUP = 0x40000000;
+    private ExpandableListAdapter mExpandableListAdapter;
+
+    public ExpandableAdapter(ExpandableListAdapter expandableListAdapter) {
+        setExpandableListAdapter(expandableListAdapter);
+    }
 
     /**
-     * The shift amount (in packed position representation) for the group
+     * Take over the state of the list from <code>previous</code>: view types, empty view,
+     * headers, footers, metrics and background inflation. <code>previous</code> stops observing
+     * its adapter and must not be used any more.
      */
-    private static final int PACKED_POSITION_SHIFT_GROUP = 16;
-
-    private PositionInfo mPositionTmp;
-
-    private int mItemCount;
-
-    private ArrayList<GroupInfo> mExpGroupInfos;
-
-    private ExpandableListAdapter mExpandableListAdapter;
+    ExpandableAdapter(ExpandableListAdapter expandableListAdapter, ExpandableAdapter previous) {
+        previous.mExpandableListAdapter.unregisterObserver(previous);
+
+        mViewTypeRegistry = previous.mViewTypeRegistry;
+        mEmpty = previous.mEmpty;
+        mHeaders.addAll(previous.mHeaders);
+        mFooters.addAll(previous.mFooters);
+        mGroupIndex.setHeaderCount(mHeaders.size());
+        mGroupIndex.setFooterCount(mFooters.size());
+        setMetrics(previous.mMetrics);
+
+        mHolderInflater = previous.mHolderInflater;
+        previous.mHolderInflater = null;
+        if (mHolderInflater != null) {
+            mHolderInflater.setAdapter(this);
+        }
 
-    public ExpandableAdapter(ExpandableListAdapter expandableListAdapter) {
         setExpandableListAdapter(expandableListAdapter);
     }
 
@@ -68,23 +81,39 @@ class ExpandableAdapter extends RecyclerView.Adapter<ViewHolder>
     /**
      * header part
      */
-    private ArrayList<ViewHolder> mHeaders = new ArrayList<>();
+    private final ArrayList<FixedItem> mHeaders = new ArrayList<>();
 
-    public void addHeader(ViewHolder header) {
+    public void addHeader(FixedItem header) {
         mHeaders.add(header);
-        mPositionTmp = null;
-        notifyItemInserted(mHeaders.size() - 1);
+        mGroupIndex.setHeaderCount(mHeaders.size());
+        mPositionCache.clear();
+        mNotifyBatcher.onInserted(mHeaders.size() - 1, 1);
     }
 
-    public void removeHeader(ViewHolder header) {
+    public void removeHeader(FixedItem header) {
         int index = mHeaders.indexOf(header);
         if (index != -1) {
-            mHeaders.remove(header);
-            mPositionTmp = null;
-            notifyItemRemoved(index);
+            mHeaders.remove(index);
+            mGroupIndex.setHeaderCount(mHeaders.size());
+            mPositionCache.clear();
+            mNotifyBatcher.onRemoved(index, 1);
         }
     }
 
+    /**
+     * @deprecated the holder can't be recycled and is shown at most once, use
+     * {@link #addHeader(FixedItem)}
+     */
+    @Deprecated
+    public void addHeader(ViewHolder header) {
+        addHeader(new HolderItem(header, sNextHolderSerial.getAndIncrement()));
+    }
+
+    @Deprecated
+    public void removeHeader(ViewHolder header) {
+        removeHeader(findHolderItem(mHeaders, header));
+    }
+
     public int getHeaderCount() {
         return mHeaders.size();
     }
@@ -92,27 +121,103 @@ class ExpandableAdapter extends RecyclerView.Adapter<ViewHolder>
     /**
      * footer part
      */
-    private ArrayList<ViewHolder> mFooters = new ArrayList<>();
+    private final ArrayList<FixedItem> mFooters = new ArrayList<>();
 
-    public void addFooter(ViewHolder footer) {
+    public void addFooter(FixedItem footer) {
         mFooters.add(footer);
-        mPositionTmp = null;
-        notifyItemInserted(getItemCount() - 1);
+        mGroupIndex.setFooterCount(mFooters.size());
+        mPositionCache.clear();
+        mNotifyBatcher.onInserted(getItemCount() - 1, 1);
     }
 
-    public void removeFooter(ViewHolder footer) {
+    public void removeFooter(FixedItem footer) {
         int index = mFooters.indexOf(footer);
         if (index != -1) {
-            mFooters.remove(footer);
-            mPositionTmp = null;
-            notifyItemRemoved(mItemCount + getHeaderCount() + index);
+            mFooters.remove(index);
+            mGroupIndex.setFooterCount(mFooters.size());
+            mPositionCache.clear();
+            mNotifyBatcher.onRemoved(mGroupIndex.getTotal() + getHeaderCount() + index, 1);
         }
     }
 
+    /**
+     * @deprecated the holder can't be recycled and is shown at most once, use
+     * {@link #addFooter(FixedItem)}
+     */
+    @Deprecated
+    public void addFooter(ViewHolder footer) {
+        addFooter(new HolderItem(footer, sNextHolderSerial.getAndIncrement()));
+    }
+
+    @Deprecated
+    public void removeFooter(ViewHolder footer) {
+        removeFooter(findHolderItem(mFooters, footer));
+    }
+
     public int getFooterCount() {
         return mFooters.size();
     }
 
+    /**
+     * rebind a header or footer, nothing happens if it is not added
+     */
+    public void notifyFixedItemChanged(FixedItem item) {
+        int index = mHeaders.indexOf(item);
+        if (index != -1) {
+            mNotifyBatcher.onChanged(index, 1);
+            return;
+        }
+
+        index = mFooters.indexOf(item);
+        if (index != -1) {
+            mNotifyBatcher.onChanged(mGroupIndex.getTotal() + getHeaderCount() + index, 1);
+        }
+    }
+
+    /**
+     * serial of the next {@link HolderItem}, each of them takes a view type of its own. The
+     * serials are global, lists sharing an {@link ExpandableViewPool} must not share them.
+     */
+    private static final AtomicInteger sNextHolderSerial = new AtomicInteger();
+
+    private static FixedItem findHolderItem(ArrayList<FixedItem> items, ViewHolder holder) {
+        for (FixedItem item : items) {
+            if (item instanceof HolderItem && ((HolderItem) item).mHolder == holder) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * view type of a header or footer, shared by the items of the same type
+     */
+    private int getFixedViewType(FixedItem item) {
+        if (item instanceof HolderItem) {
+            return mViewTypeRegistry.getId(ViewTypeRegistry.KIND_HOLDER,
+                    ((HolderItem) item).mSerial);
+        } else {
+            return mViewTypeRegistry.getId(ViewTypeRegistry.KIND_FIXED, item.getItemViewType());
+        }
+    }
+
+    /**
+     * @return a header or footer of the view type, any of them can create the holder
+     */
+    private FixedItem findFixedItem(int viewType) {
+        for (FixedItem header : mHeaders) {
+            if (getFixedViewType(header) == viewType) {
+                return header;
+            }
+        }
+        for (FixedItem footer : mFooters) {
+            if (getFixedViewType(footer) == viewType) {
+                return footer;
+            }
+        }
+        throw new RuntimeException("No header or footer of view type " + viewType);
+    }
+
     /**
      * Point to the {@link android.widget.ExpandableListAdapter} that will give us data/Views
      *
@@ -123,33 +228,490 @@ class ExpandableAdapter extends RecyclerView.Adapter<ViewHolder>
             mExpandableListAdapter.unregisterObserver(this);
         }
 
+        if (expandableListAdapter.hasStableIds() != hasStableIds()) {
+            if (hasObservers()) {
+                throw new RuntimeException("For ExpandableRecyclerView, adapters set in turn "
+                        + "must agree on hasStableIds() while the list is observed");
+            }
+            setHasStableIds(expandableListAdapter.hasStableIds());
+        }
         expandableListAdapter.registerObserver(this);
 
-        recreateExpGroupInfos(expandableListAdapter);
+        // expanded state belongs to the groups of the previous adapter
+        mGroupIndex.setGroupCount(0);
+        recreateGroupIndex(expandableListAdapter);
         mExpandableListAdapter = expandableListAdapter;
     }
 
     /**
-     * recalculate {@link #mExpGroupInfos}
+     * recalculate {@link #mGroupIndex}, groups keep their expanded state by position and only
+     * expanded groups are asked for their child count. With lazy child counts, only the groups
+     * expanded with a resolved count are asked, the others wait for a lookup.
+     */
+    private void recreateGroupIndex(ExpandableListAdapter expandableListAdapter) {
+        final int groupCount = expandableListAdapter.getGroupCount();
+        final int oldGroupCount = mGroupIndex.getGroupCount();
+
+        mGroupIndex.setGroupCount(groupCount);
+        for (int i = 0; i < groupCount; ++i) {
+            if (i < oldGroupCount) {
+                fillGroup(expandableListAdapter, i,
+                        mGroupIndex.isExpanded(i) || mGroupIndex.isPending(i),
+                        mGroupIndex.isExpanded(i));
+            } else {
+                fillGroup(expandableListAdapter, i,
+                        expandableListAdapter.isGroupExpandedByDefault(i), false);
+            }
+        }
+        mResolveQueueSize = 0;
+    }
+
+    /**
+     * @param resolved whether an expanded group must be asked for its child count even if the
+     *                 adapter has lazy child counts
+     */
+    private void fillGroup(ExpandableListAdapter expandableListAdapter, int group,
+            boolean expanded, boolean resolved) {
+        if (expanded && !resolved && expandableListAdapter.hasLazyChildCounts()) {
+            mGroupIndex.setPendingGroup(group,
+                    expandableListAdapter.getEstimatedChildCount(group));
+        } else {
+            mGroupIndex.setGroup(group, expanded ? expandableListAdapter.getChildCount(group)
+                    : ExpandableIndex.UNKNOWN, expanded);
+        }
+    }
+
+    /**
+     * saved state part
+     *
+     * @return one bit per group, set for the expanded and pending ones
      */
-    private void recreateExpGroupInfos(ExpandableListAdapter expandableListAdapter) {
-        int itemCount = expandableListAdapter.getGroupCount();
-        ArrayList<GroupInfo> expGroupInfos = new ArrayList<>(itemCount);
-        for (int i = 0, count = itemCount, fpos = 0; i < count; ++i) {
-            int childCountAtPosition = expandableListAdapter.getChildCount(i);
-            expGroupInfos.add(new GroupInfo(fpos, fpos + childCountAtPosition));
+    long[] getExpandedGroups() {
+        final int groupCount = mGroupIndex.getGroupCount();
+        long[] expanded = new long[(groupCount + 63) >>> 6];
+        for (int i = 0; i < groupCount; ++i) {
+            if (isGroupExpanded(i)) {
+                expanded[i >>> 6] |= 1L << i;
+            }
+        }
+        return expanded;
+    }
 
-            itemCount += childCountAtPosition;
-            fpos += childCountAtPosition + 1;
+    /**
+     * rebuild {@link #mGroupIndex} in one pass with the saved expanded groups, groups past the
+     * saved ones take their default. Only expanded groups are asked for their child count, the
+     * hooks are not called.
+     *
+     * @param savedGroupCount number of groups <code>expanded</code> was saved with
+     * @param resolvedGroup   group whose child count is asked even with lazy child counts, -1
+     *                        for none
+     */
+    void restoreExpandedGroups(long[] expanded, int savedGroupCount, int resolvedGroup) {
+        final long start = beginMutation();
+        final int groupCount = mExpandableListAdapter.getGroupCount();
+        mGroupIndex.setGroupCount(0);
+        mGroupIndex.setGroupCount(groupCount);
+        for (int i = 0; i < groupCount; ++i) {
+            boolean groupExpanded = i < savedGroupCount ? (expanded[i >>> 6] & 1L << i) != 0
+                    : mExpandableListAdapter.isGroupExpandedByDefault(i);
+            fillGroup(mExpandableListAdapter, i, groupExpanded, i == resolvedGroup);
         }
+        mResolveQueueSize = 0;
 
-        mItemCount = itemCount;
-        mExpGroupInfos = expGroupInfos;
+        mPositionCache.clear();
+        dispatchDataSetChanged();
+        endMutation(start);
+
+        showEmptyViewIfNeeded();
     }
 
     void showEmptyViewIfNeeded() {
-        if (mEmpty != null) {
-            mEmpty.setVisibility(mItemCount == 0 ? View.VISIBLE : View.GONE);
+        // checked once when the batch finishes
+        if (mEmpty != null && !mNotifyBatcher.isBatching()) {
+            mEmpty.setVisibility(mGroupIndex.getTotal() == 0 ? View.VISIBLE : View.GONE);
+        }
+    }
+
+    /**
+     * expand/collapse part
+     */
+    public boolean isGroupExpanded(int group) {
+        return mGroupIndex.isExpanded(group) || mGroupIndex.isPending(group);
+    }
+
+    /**
+     * @param fromUser whether the request is issued by a user operation
+     * @return whether the group is expanded after this call
+     */
+    public boolean expandGroup(int group, boolean fromUser) {
+        if (mGroupIndex.isExpanded(group)) {
+            return true;
+        }
+        if (mGroupIndex.isPending(group)) {
+            resolveGroup(group);
+            return true;
+        }
+        if (!mExpandableListAdapter.onHookGroupExpand(group, fromUser)) {
+            return false;
+        }
+
+        final long start = beginMutation();
+        int childCount = mExpandableListAdapter.getChildCount(group);
+        mGroupIndex.setChildCount(group, childCount);
+        mGroupIndex.setExpanded(group, true);
+        onChildrenShown(group, childCount);
+        endMutation(start);
+        return true;
+    }
+
+    private void onChildrenShown(int group, int childCount) {
+        int insertStart = getGroupPosition(group) + 1;
+        mPositionCache.shiftChildren(insertStart, childCount, group);
+        mNotifyBatcher.onInserted(insertStart, childCount);
+    }
+
+    /**
+     * @param fromUser whether the request is issued by a user operation
+     * @return whether the group is collapsed after this call
+     */
+    public boolean collapseGroup(int group, boolean fromUser) {
+        if (!isGroupExpanded(group)) {
+            return true;
+        }
+        if (!mExpandableListAdapter.onHookGroupCollapse(group, fromUser)) {
+            return false;
+        }
+        if (mGroupIndex.isPending(group)) {
+            // no child is shown yet
+            mGroupIndex.cancelPending(group);
+            return true;
+        }
+
+        final long start = beginMutation();
+        int childCount = mGroupIndex.getChildCount(group);
+        mGroupIndex.setExpanded(group, false);
+
+        int deleteStart = getGroupPosition(group) + 1;
+        mPositionCache.invalidate(deleteStart, childCount);
+        mPositionCache.shiftChildren(deleteStart + childCount, -childCount, group);
+        mNotifyBatcher.onRemoved(deleteStart, childCount);
+        endMutation(start);
+        return true;
+    }
+
+    /**
+     * bulk expand/collapse part, the index is updated in a single pass over the groups and the
+     * changes are notified as ranges, or as one data set change if there are more ranges than
+     * this
+     */
+    private static final int BULK_RANGE_THRESHOLD = 32;
+
+    private static final int RANGE_INSERT = 0;
+    private static final int RANGE_REMOVE = 1;
+    private static final int RANGE_CHANGE = 2;
+
+    private final int[] mRangeTypes = new int[BULK_RANGE_THRESHOLD];
+    private final int[] mRangeStarts = new int[BULK_RANGE_THRESHOLD];
+    private final int[] mRangeCounts = new int[BULK_RANGE_THRESHOLD];
+
+    /**
+     * ranges of the running bulk operation, may exceed the threshold
+     */
+    private int mRangeCount;
+
+    /**
+     * expand or collapse groups, each one is still checked by
+     * {@link ExpandableListAdapter#onHookGroupExpand} or
+     * {@link ExpandableListAdapter#onHookGroupCollapse}. With lazy child counts, expanded groups
+     * wait for a lookup to be asked for their child count.
+     *
+     * @param groups groups in any order, null for all of them
+     * @return number of groups expanded or collapsed by this call
+     */
+    public int setGroupsExpanded(int[] groups, boolean expanded) {
+        int[] targets = null;
+        if (groups != null) {
+            targets = groups.clone();
+            Arrays.sort(targets);
+        }
+
+        final boolean lazy = mExpandableListAdapter.hasLazyChildCounts();
+        final int groupCount = mGroupIndex.getGroupCount();
+        int next = 0;
+        int position = getHeaderCount();
+        int changed = 0;
+
+        final long start = beginMutation();
+        mRangeCount = 0;
+        for (int group = 0; group < groupCount; ++group) {
+            if (targets != null) {
+                while (next < targets.length && targets[next] < group) {
+                    ++next;
+                }
+                if (next == targets.length) {
+                    break;
+                }
+                if (targets[next] != group) {
+                    position += mGroupIndex.getGroupSize(group);
+                    continue;
+                }
+            }
+
+            if (expanded ? expandInBulk(group, position, lazy) : collapseInBulk(group, position)) {
+                ++changed;
+            }
+            position += mGroupIndex.getGroupSize(group);
+        }
+
+        if (changed == 0) {
+            endMutation(start);
+            return 0;
+        }
+
+        mPositionCache.clear();
+        if (mRangeCount > BULK_RANGE_THRESHOLD) {
+            dispatchDataSetChanged();
+        } else {
+            mNotifyBatcher.beginBatch();
+            for (int i = 0; i < mRangeCount; ++i) {
+                if (mRangeTypes[i] == RANGE_INSERT) {
+                    mNotifyBatcher.onInserted(mRangeStarts[i], mRangeCounts[i]);
+                } else if (mRangeTypes[i] == RANGE_REMOVE) {
+                    mNotifyBatcher.onRemoved(mRangeStarts[i], mRangeCounts[i]);
+                } else {
+                    mNotifyBatcher.onChanged(mRangeStarts[i], mRangeCounts[i]);
+                }
+            }
+            mNotifyBatcher.endBatch();
+        }
+        endMutation(start);
+        return changed;
+    }
+
+    /**
+     * @param position adapter position of the group after the changes before it
+     */
+    private boolean expandInBulk(int group, int position, boolean lazy) {
+        if (isGroupExpanded(group) || !mExpandableListAdapter.onHookGroupExpand(group, false)) {
+            return false;
+        }
+
+        if (lazy) {
+            // only the group item changes until the children are shown
+            mGroupIndex.setPendingGroup(group,
+                    Math.max(0, mExpandableListAdapter.getEstimatedChildCount(group)));
+            addRange(RANGE_CHANGE, position, 1);
+        } else {
+            int childCount = mExpandableListAdapter.getChildCount(group);
+            mGroupIndex.setGroup(group, childCount, true);
+            addRange(RANGE_INSERT, position + 1, childCount);
+        }
+        return true;
+    }
+
+    private boolean collapseInBulk(int group, int position) {
+        if (!isGroupExpanded(group) || !mExpandableListAdapter.onHookGroupCollapse(group, false)) {
+            return false;
+        }
+
+        if (mGroupIndex.isPending(group)) {
+            mGroupIndex.cancelPending(group);
+        } else {
+            int childCount = mGroupIndex.getChildCount(group);
+            mGroupIndex.setGroup(group, childCount, false);
+            addRange(RANGE_REMOVE, position + 1, childCount);
+        }
+        return true;
+    }
+
+    /**
+     * record a range of the running bulk operation, group changes touching the last one are
+     * merged into it
+     */
+    private void addRange(int type, int start, int count) {
+        if (count == 0) {
+            return;
+        }
+
+        if (mRangeCount > 0 && mRangeCount <= BULK_RANGE_THRESHOLD
+                && type == RANGE_CHANGE && mRangeTypes[mRangeCount - 1] == RANGE_CHANGE
+                && mRangeStarts[mRangeCount - 1] + mRangeCounts[mRangeCount - 1] == start) {
+            mRangeCounts[mRangeCount - 1] += count;
+            return;
+        }
+
+        if (mRangeCount < BULK_RANGE_THRESHOLD) {
+            mRangeTypes[mRangeCount] = type;
+            mRangeStarts[mRangeCount] = start;
+            mRangeCounts[mRangeCount] = count;
+        }
+        ++mRangeCount;
+    }
+
+    /**
+     * lazy child count part, pending groups looked up during a layout are queued and resolved
+     * right after it, RecyclerView doesn't take structural changes while laying out
+     */
+    private Handler mHandler;
+
+    /**
+     * pending groups to resolve, kept in sync with group insertions, removals and moves
+     */
+    private int[] mResolveQueue = new int[16];
+
+    private int mResolveQueueSize;
+
+    private boolean mResolvePosted;
+
+    private final Runnable mResolveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            resolveQueuedGroups();
+        }
+    };
+
+    private void queueResolve(int group) {
+        for (int i = 0; i < mResolveQueueSize; ++i) {
+            if (mResolveQueue[i] == group) {
+                return;
+            }
+        }
+
+        if (mResolveQueueSize == mResolveQueue.length) {
+            mResolveQueue = Arrays.copyOf(mResolveQueue, mResolveQueueSize * 2);
+        }
+        mResolveQueue[mResolveQueueSize++] = group;
+
+        if (!mResolvePosted) {
+            if (mHandler == null) {
+                mHandler = new Handler(Looper.getMainLooper());
+            }
+            mHandler.post(mResolveRunnable);
+            mResolvePosted = true;
+        }
+    }
+
+    private void resolveQueuedGroups() {
+        mResolvePosted = false;
+        if (mResolveQueueSize == 0) {
+            return;
+        }
+
+        mNotifyBatcher.beginBatch();
+        for (int i = 0; i < mResolveQueueSize; ++i) {
+            int group = mResolveQueue[i];
+            if (mGroupIndex.isPending(group)) {
+                resolveGroup(group);
+            }
+        }
+        mResolveQueueSize = 0;
+        if (mNotifyBatcher.endBatch()) {
+            showEmptyViewIfNeeded();
+        }
+    }
+
+    /**
+     * ask a pending group for its child count and show its children
+     */
+    private void resolveGroup(int group) {
+        final long start = beginMutation();
+        int childCount = mExpandableListAdapter.getChildCount(group);
+        mGroupIndex.resolvePending(group, childCount);
+        onChildrenShown(group, childCount);
+        endMutation(start);
+    }
+
+    /**
+     * keep queued groups pointing at the same groups, the removed ones are dropped
+     *
+     * @param removedCount groups removed at <code>groupStart</code>, 0 for an insertion
+     * @param insertedCount groups inserted at <code>groupStart</code>
+     */
+    private void shiftQueuedGroups(int groupStart, int removedCount, int insertedCount) {
+        int size = 0;
+        for (int i = 0; i < mResolveQueueSize; ++i) {
+            int group = mResolveQueue[i];
+            if (group >= groupStart + removedCount) {
+                mResolveQueue[size++] = group - removedCount + insertedCount;
+            } else if (group < groupStart) {
+                mResolveQueue[size++] = group;
+            }
+        }
+        mResolveQueueSize = size;
+    }
+
+    /**
+     * @return item count with pending groups taking their estimated children, for sizing the
+     * scrollbar
+     */
+    int getEstimatedItemCount() {
+        return getItemCount() + mGroupIndex.getPendingChildCount();
+    }
+
+    /**
+     * @return adapter position of the group item
+     */
+    int getGroupPosition(int group) {
+        return mGroupIndex.getGroupPosition(group);
+    }
+
+    /**
+     * @return adapter position of the child item, {@link RecyclerView#NO_POSITION} if the child
+     * is not shown
+     */
+    int getChildPosition(int group, int child) {
+        return mGroupIndex.getChildPosition(group, child);
+    }
+
+    int getGroupCount() {
+        return mGroupIndex.getGroupCount();
+    }
+
+    /**
+     * @return the user view type of the group
+     */
+    int getGroupItemViewType(int group) {
+        return mExpandableListAdapter.getGroupItemViewType(group);
+    }
+
+    /**
+     * create a group holder outside of RecyclerView, it never takes a ready holder
+     */
+    ViewHolder createGroupViewHolder(ViewGroup parent, int groupType) {
+        return mExpandableListAdapter.onCreateGroupViewHolder(parent, groupType);
+    }
+
+    @SuppressWarnings("unchecked")
+    void bindGroupViewHolder(ViewHolder holder, int group) {
+        mExpandableListAdapter.onBindGroupViewHolder(holder, group);
+    }
+
+    /**
+     * @return rows taken by the groups and their visible children, without touching a stale tree
+     */
+    private int getGroupRangeSize(int groupStart, int groupCount) {
+        int size = 0;
+        for (int i = groupStart; i < groupStart + groupCount; ++i) {
+            size += mGroupIndex.getGroupSize(i);
+        }
+        return size;
+    }
+
+    /**
+     * @see {@link ExpandableDataObserver#notifyExpandableBatchStarted}
+     */
+    @Override
+    public void notifyExpandableBatchStarted() {
+        mNotifyBatcher.beginBatch();
+    }
+
+    /**
+     * @see {@link ExpandableDataObserver#notifyExpandableBatchFinished}
+     */
+    @Override
+    public void notifyExpandableBatchFinished() {
+        if (mNotifyBatcher.endBatch()) {
+            showEmptyViewIfNeeded();
         }
     }
 
@@ -158,21 +720,28 @@ class ExpandableAdapter extends RecyclerView.Adapter<ViewHolder>
      */
     @Override
     public void notifyExpandableDataChanged() {
-        recreateExpGroupInfos(mExpandableListAdapter);
+        final long start = beginMutation();
+        recreateGroupIndex(mExpandableListAdapter);
 
-        mPositionTmp = null;
-        notifyDataSetChanged();
+        mPositionCache.clear();
+        dispatchDataSetChanged();
+        endMutation(start);
 
         showEmptyViewIfNeeded();
     }
 
     /**
+     * Positions are resolved from {@link #mGroupIndex} rather than taken from the callers, who
+     * can't tell where children of collapsed groups are.
+     *
      * @see {@link ExpandableDataObserver#notifyExpandableItemChanged}
      */
     @Override
     public void notifyExpandableItemChanged(int group, int child, int position) {
-        // mExpGroupInfos won't change
-        notifyItemChanged(position);
+        // mGroupIndex won't change, children of collapsed groups are not shown
+        if (child == -1 || mGroupIndex.isExpanded(group)) {
+            mNotifyBatcher.onChanged(getGroupPosition(group) + 1 + child, 1);
+        }
         // item change won't make adapter empty
         showEmptyViewIfNeeded();
     }
@@ -182,20 +751,7 @@ class ExpandableAdapter extends RecyclerView.Adapter<ViewHolder>
      */
     @Override
     public void notifyExpandableItemInserted(int group, int child, int position) {
-        GroupInfo info = mExpGroupInfos.get(group);
-        ++info.lpos;
-        ++mItemCount;
-
-        for (int i = group + 1; i < mExpGroupInfos.size(); ++i) {
-            info = mExpGroupInfos.get(i);
-            ++info.fpos;
-            ++info.lpos;
-        }
-
-        mPositionTmp = null;
-        notifyItemInserted(position);
-
-        showEmptyViewIfNeeded();
+        notifyExpandableChildRangeInserted(group, child, 1);
     }
 
     /**
@@ -203,9 +759,9 @@ class ExpandableAdapter extends RecyclerView.Adapter<ViewHolder>
      */
     @Override
     public void notifyExpandableRemoved(int group, int child, int position) {
-        GroupInfo info = mExpGroupInfos.get(group);
-        // if the group has only one child, remove it
-        if (info.lpos - info.fpos == 1) {
+        // if the group has only one child, remove it. the child count of a collapsed group which
+        // has never been expanded is unknown, keep the group then.
+        if (mGroupIndex.getChildCount(group) == 1) {
             notifyExpandableGroupRemoved(group, position);
         } else {
             notifyExpandableItemRemoved(group, child, position);
@@ -217,207 +773,646 @@ class ExpandableAdapter extends RecyclerView.Adapter<ViewHolder>
      */
     @Override
     public void notifyExpandableItemRemoved(int group, int child, int position) {
-        GroupInfo info = mExpGroupInfos.get(group);
-        --info.lpos; // move last position forward a step, first position not changed
+        notifyExpandableChildRangeRemoved(group, child, 1);
+    }
+
+    /**
+     * @see {@link ExpandableDataObserver#notifyExpandableGroupRemoved}
+     */
+    @Override
+    public void notifyExpandableGroupRemoved(int group, int position) {
+        notifyExpandableGroupRangeRemoved(group, 1);
+    }
 
-        for (int i = group + 1; i < mExpGroupInfos.size(); ++i) {
-            info = mExpGroupInfos.get(i);
-            --info.fpos;
-            --info.lpos;
+    /**
+     * @see {@link ExpandableDataObserver#notifyExpandableGroupRangeInserted}
+     */
+    @Override
+    public void notifyExpandableGroupRangeInserted(int groupStart, int groupCount) {
+        final long start = beginMutation();
+        mGroupIndex.insertGroups(groupStart, groupCount);
+        shiftQueuedGroups(groupStart, 0, groupCount);
+        for (int i = groupStart; i < groupStart + groupCount; ++i) {
+            fillGroup(mExpandableListAdapter, i,
+                    mExpandableListAdapter.isGroupExpandedByDefault(i), false);
         }
 
-        --mItemCount;
-        mPositionTmp = null;
-        notifyItemRemoved(position);
+        int insertStart = getGroupPosition(groupStart);
+        int insertCount = getGroupRangeSize(groupStart, groupCount);
+        mPositionCache.shiftGroups(insertStart, insertCount, groupCount);
+        mNotifyBatcher.onInserted(insertStart, insertCount);
+        endMutation(start);
 
         showEmptyViewIfNeeded();
     }
 
     /**
-     * @see {@link ExpandableDataObserver#notifyExpandableGroupRemoved}
+     * @see {@link ExpandableDataObserver#notifyExpandableGroupRangeRemoved}
      */
     @Override
-    public void notifyExpandableGroupRemoved(int group, int position) {
-        GroupInfo info = mExpGroupInfos.get(group);
-        int deleteStart = info.fpos;
-        int deleteCount = info.lpos - info.fpos + 1;
+    public void notifyExpandableGroupRangeRemoved(int groupStart, int groupCount) {
+        final long start = beginMutation();
+        int deleteStart = getGroupPosition(groupStart);
+        int deleteCount = getGroupRangeSize(groupStart, groupCount);
+
+        mGroupIndex.removeGroups(groupStart, groupCount);
+        shiftQueuedGroups(groupStart, groupCount, 0);
+        mPositionCache.invalidate(deleteStart, deleteCount);
+        mPositionCache.shiftGroups(deleteStart + deleteCount, -deleteCount, -groupCount);
+        mNotifyBatcher.onRemoved(deleteStart, deleteCount);
+        endMutation(start);
+
+        showEmptyViewIfNeeded();
+    }
+
+    /**
+     * @see {@link ExpandableDataObserver#notifyExpandableGroupMoved}
+     */
+    @Override
+    public void notifyExpandableGroupMoved(int fromGroup, int toGroup) {
+        if (fromGroup == toGroup) {
+            return;
+        }
+
+        final long start = beginMutation();
+        int fromPosition = getGroupPosition(fromGroup);
+        int size = mGroupIndex.getGroupSize(fromGroup);
+        mGroupIndex.moveGroup(fromGroup, toGroup);
+        for (int i = 0; i < mResolveQueueSize; ++i) {
+            int group = mResolveQueue[i];
+            if (group == fromGroup) {
+                mResolveQueue[i] = toGroup;
+            } else if (fromGroup < toGroup && group > fromGroup && group <= toGroup) {
+                --mResolveQueue[i];
+            } else if (fromGroup > toGroup && group >= toGroup && group < fromGroup) {
+                ++mResolveQueue[i];
+            }
+        }
+        int toPosition = getGroupPosition(toGroup);
+
+        mPositionCache.clear();
+        // RecyclerView moves a single item at a time, move the rows of the group one by one
+        if (fromPosition < toPosition) {
+            for (int i = 0; i < size; ++i) {
+                mNotifyBatcher.onMoved(fromPosition, toPosition + size - 1);
+            }
+        } else {
+            for (int i = 0; i < size; ++i) {
+                mNotifyBatcher.onMoved(fromPosition + size - 1, toPosition);
+            }
+        }
+        endMutation(start);
+    }
 
-        for (int i = group + 1; i < mExpGroupInfos.size(); ++i) {
-            info = mExpGroupInfos.get(i);
-            info.fpos -= deleteCount;
-            info.lpos -= deleteCount;
+    /**
+     * @see {@link ExpandableDataObserver#notifyExpandableChildRangeInserted}
+     */
+    @Override
+    public void notifyExpandableChildRangeInserted(int group, int childStart, int childCount) {
+        final long start = beginMutation();
+        mGroupIndex.addChildren(group, childCount);
+
+        if (mGroupIndex.isExpanded(group)) {
+            int insertStart = getGroupPosition(group) + 1 + childStart;
+            mPositionCache.shiftChildren(insertStart, childCount, group);
+            mNotifyBatcher.onInserted(insertStart, childCount);
         }
+        endMutation(start);
+
+        showEmptyViewIfNeeded();
+    }
 
-        mExpGroupInfos.remove(group);
-        mItemCount -= deleteCount;
-        mPositionTmp = null;
-        notifyItemRangeRemoved(deleteStart, deleteCount);
+    /**
+     * @see {@link ExpandableDataObserver#notifyExpandableChildRangeRemoved}
+     */
+    @Override
+    public void notifyExpandableChildRangeRemoved(int group, int childStart, int childCount) {
+        final long start = beginMutation();
+        mGroupIndex.addChildren(group, -childCount);
+
+        if (mGroupIndex.isExpanded(group)) {
+            int deleteStart = getGroupPosition(group) + 1 + childStart;
+            mPositionCache.invalidate(deleteStart, childCount);
+            mPositionCache.shiftChildren(deleteStart + childCount, -childCount, group);
+            mNotifyBatcher.onRemoved(deleteStart, childCount);
+        }
+        endMutation(start);
 
         showEmptyViewIfNeeded();
     }
 
+    /**
+     * @see {@link ExpandableDataObserver#notifyExpandableChildMoved}
+     */
+    @Override
+    public void notifyExpandableChildMoved(int group, int fromChild, int toChild) {
+        if (mGroupIndex.isExpanded(group) && fromChild != toChild) {
+            int groupPosition = getGroupPosition(group);
+            mPositionCache.clear();
+            mNotifyBatcher.onMoved(groupPosition + 1 + fromChild, groupPosition + 1 + toChild);
+        }
+    }
+
+    /**
+     * @see {@link ExpandableDataObserver#notifyExpandableChildRangeChanged}
+     */
+    @Override
+    public void notifyExpandableChildRangeChanged(int group, int childStart, int childCount,
+            Object payload) {
+        if (mGroupIndex.isExpanded(group)) {
+            mNotifyBatcher.onChanged(getGroupPosition(group) + 1 + childStart, childCount,
+                    payload);
+        }
+    }
+
+    /**
+     * @see {@link ExpandableDataObserver#notifyExpandableGroupChanged}
+     */
+    @Override
+    public void notifyExpandableGroupChanged(int group, Object payload) {
+        mNotifyBatcher.onChanged(getGroupPosition(group), 1, payload);
+    }
+
+    /**
+     * The layout of the new snapshot comes with the result, it takes the expanded state of the
+     * kept groups, inserted groups take their default, and replaces {@link #mGroupIndex} at once.
+     * Only the pending groups are asked for an estimate.
+     *
+     * @see {@link ExpandableDataObserver#notifyExpandableDiffDispatched}
+     */
+    @Override
+    public void notifyExpandableDiffDispatched(ExpandableDiff.Result result) {
+        final long start = beginMutation();
+        final ExpandableIndex oldIndex = mGroupIndex;
+        final ExpandableIndex newIndex = result.takeIndex();
+        final boolean lazy = mExpandableListAdapter.hasLazyChildCounts();
+        for (int group = 0; group < newIndex.getGroupCount(); ++group) {
+            int oldGroup = result.getOldGroup(group);
+            boolean expanded;
+            boolean pending;
+            if (oldGroup != -1) {
+                expanded = oldIndex.isExpanded(oldGroup);
+                pending = oldIndex.isPending(oldGroup);
+            } else {
+                boolean byDefault = mExpandableListAdapter.isGroupExpandedByDefault(group);
+                expanded = byDefault && !lazy;
+                pending = byDefault && lazy;
+            }
+
+            if (pending) {
+                newIndex.setPendingGroup(group,
+                        mExpandableListAdapter.getEstimatedChildCount(group));
+            } else if (expanded) {
+                newIndex.setGroup(group, newIndex.getChildCount(group), true);
+            }
+        }
+        newIndex.setHeaderCount(oldIndex.getHeaderCount());
+        newIndex.setFooterCount(oldIndex.getFooterCount());
+
+        int size = 0;
+        for (int i = 0; i < mResolveQueueSize; ++i) {
+            int group = result.getNewGroup(mResolveQueue[i]);
+            if (group != -1) {
+                mResolveQueue[size++] = group;
+            }
+        }
+        mResolveQueueSize = size;
+
+        mGroupIndex = newIndex;
+        mPositionCache.clear();
+        result.dispatchUpdatesTo(oldIndex, newIndex, mNotifyBatcher);
+        endMutation(start);
+
+        showEmptyViewIfNeeded();
+    }
+
+    /**
+     * share the view types of a pool, holders already typed by the current registry would be
+     * mixed up with the others
+     */
+    void setViewTypeRegistry(ViewTypeRegistry viewTypeRegistry) {
+        if (viewTypeRegistry == mViewTypeRegistry) {
+            return;
+        }
+        if (mViewTypeRegistry.getIdCount() != 0) {
+            throw new RuntimeException(
+                    "Set the ExpandableViewPool before ExpandableRecyclerView lays out its items");
+        }
+        mViewTypeRegistry = viewTypeRegistry;
+        if (mMetrics != null) {
+            mMetrics.setViewTypeRegistry(viewTypeRegistry);
+        }
+    }
+
+    /**
+     * opt-in background creation of group and child holders, null to create them all on the
+     * main thread
+     */
+    private AsyncHolderInflater mHolderInflater;
+
+    /**
+     * set while {@link ExpandableViewPool} creates a holder, which must not take a ready one
+     */
+    private boolean mWarmingUp;
+
+    void setAsyncHolderInflater(AsyncHolderInflater holderInflater) {
+        if (mHolderInflater != null) {
+            mHolderInflater.clear();
+        }
+        mHolderInflater = holderInflater;
+    }
+
+    AsyncHolderInflater getAsyncHolderInflater() {
+        return mHolderInflater;
+    }
+
+    /**
+     * metrics part, null unless a listener is set, so the hot paths only check this field
+     */
+    private ExpandableMetrics mMetrics;
+
+    void setMetrics(ExpandableMetrics metrics) {
+        if (metrics != null) {
+            metrics.setViewTypeRegistry(mViewTypeRegistry);
+        }
+        mMetrics = metrics;
+    }
+
+    /**
+     * @return start time to pass to {@link #endMutation}, 0 without metrics
+     */
+    private long beginMutation() {
+        final ExpandableMetrics metrics = mMetrics;
+        return metrics != null ? metrics.beginMutation() : 0;
+    }
+
+    private void endMutation(long startNanos) {
+        final ExpandableMetrics metrics = mMetrics;
+        // metrics set in the middle of a mutation have no start time for it
+        if (metrics != null && startNanos != 0) {
+            metrics.endMutation(startNanos);
+        }
+    }
+
+    private void dispatchDataSetChanged() {
+        final ExpandableMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.onDataSetChanged();
+        }
+        mNotifyBatcher.onDataSetChanged();
+    }
+
+    /**
+     * @return the adapter view type of groups of <code>groupType</code>
+     */
+    int getGroupViewType(int groupType) {
+        return mViewTypeRegistry.getId(ViewTypeRegistry.KIND_GROUP, groupType);
+    }
+
+    /**
+     * @return the adapter view type of children of <code>childType</code>
+     */
+    int getChildViewType(int childType) {
+        return mViewTypeRegistry.getId(ViewTypeRegistry.KIND_CHILD, childType);
+    }
+
     @Override
     public int getItemCount() {
-        return mItemCount + getHeaderCount() + getFooterCount();
+        return mGroupIndex.getItemCount();
+    }
+
+    /**
+     * Combine the ids of the user adapter into item ids, the two top bits tell the kinds apart
+     * so ids never collide across them:
+     * <ul>
+     * <li>groups: <code>00</code> and the group id</li>
+     * <li>headers and footers: <code>01</code> and the serial of the {@link FixedItem}</li>
+     * <li>children: <code>1</code>, the group id in 31 bits and the child id in 32 bits</li>
+     * </ul>
+     * A group id out of 31 bits or a child id out of 32 bits throws, it would be truncated into
+     * the id of another item otherwise.
+     */
+    @Override
+    public long getItemId(int position) {
+        if (!hasStableIds()) {
+            return RecyclerView.NO_ID;
+        }
+
+        PositionInfo positionInfo = getUnflattenedPos(position);
+        if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_HEADER) {
+            return getFixedItemId(mHeaders.get(positionInfo.child));
+        } else if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_FOOTER) {
+            return getFixedItemId(mFooters.get(positionInfo.child));
+        } else if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_GROUP) {
+            return getGroupItemId(mExpandableListAdapter.getGroupId(positionInfo.group));
+        } else {
+            return getChildItemId(mExpandableListAdapter.getGroupId(positionInfo.group),
+                    mExpandableListAdapter.getChildId(positionInfo.group, positionInfo.child));
+        }
+    }
+
+    static long getGroupItemId(long groupId) {
+        checkId("group", groupId, 0x7FFFFFFFL);
+        return groupId;
+    }
+
+    static long getFixedItemId(FixedItem item) {
+        return 0x4000000000000000L | item.mStableId & 0x3FFFFFFFFFFFFFFFL;
+    }
+
+    static long getChildItemId(long groupId, long childId) {
+        checkId("group", groupId, 0x7FFFFFFFL);
+        checkId("child", childId, 0xFFFFFFFFL);
+        return 0x8000000000000000L | groupId << 32 | childId;
+    }
+
+    private static void checkId(String kind, long id, long maxId) {
+        if (id < 0 || id > maxId) {
+            throw new RuntimeException("For ExpandableRecyclerView, " + kind
+                    + " ids must be within 0 and " + maxId + " with stable ids, got " + id);
+        }
     }
 
     /**
      * hide item type in view type
      *
      * @param position item position in adapter
-     * @return view type with item type and view type
+     * @return dense id of the item kind and its view type from {@link #mViewTypeRegistry}
      */
     @Override
     public int getItemViewType(int position) {
         PositionInfo positionInfo = getUnflattenedPos(position);
         if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_HEADER) {
-            return position | PACKED_TYPE_MASK_HEADER;
+            return getFixedViewType(mHeaders.get(positionInfo.child));
         } else if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_FOOTER) {
-            return (position << PACKED_POSITION_SHIFT_FOOTER) | PACKED_TYPE_MASK_FOOTER;
+            return getFixedViewType(mFooters.get(positionInfo.child));
         } else if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_GROUP) {
-            return (mExpandableListAdapter.getGroupItemViewType(positionInfo.group)
-                    << PACKED_POSITION_SHIFT_GROUP) | PACKED_TYPE_MASK_GROUP;
+            return mViewTypeRegistry.getId(ViewTypeRegistry.KIND_GROUP,
+                    mExpandableListAdapter.getGroupItemViewType(positionInfo.group));
         } else {
-            return mExpandableListAdapter.getChildItemViewType(positionInfo.group,
-                    positionInfo.child) | PACKED_TYPE_MASK_CHILD;
+            return mViewTypeRegistry.getId(ViewTypeRegistry.KIND_CHILD,
+                    mExpandableListAdapter.getChildItemViewType(positionInfo.group,
+                            positionInfo.child));
+        }
+    }
+
+    /**
+     * create a holder for {@link ExpandableViewPool} ahead of time, bypassing the holders ready
+     * in {@link #mHolderInflater} which are kept for the layouts
+     */
+    ViewHolder createWarmUpViewHolder(ViewGroup parent, int viewType) {
+        mWarmingUp = true;
+        try {
+            // createViewHolder tags the holder with its view type, the pool sorts holders by it
+            return createViewHolder(parent, viewType);
+        } finally {
+            mWarmingUp = false;
         }
     }
 
     @Override
-    public final ViewHolder onCreateViewHolder(ViewGroup parent, int maskedViewType) {
-        if (isHeader(maskedViewType)) {
-            return mHeaders.get(getHeaderPosition(maskedViewType));
-        } else if (isFooter(maskedViewType)) {
-            return mFooters.get(getFooterPosition(maskedViewType));
-        } else if (isGroupType(maskedViewType)) {
-            return mExpandableListAdapter.onCreateGroupViewHolder(parent,
-                    getUnmaskedGroupType(maskedViewType));
-        } else {
-            return mExpandableListAdapter.onCreateChildViewHolder(parent,
-                    getUnmaskedChildType(maskedViewType));
+    public final ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        if (mHolderInflater != null && !mWarmingUp) {
+            ViewHolder holder = mHolderInflater.poll(viewType);
+            if (holder != null) {
+                return holder;
+            }
+        }
+
+        // holders created ahead by the inflater are not measured, its thread must not touch
+        // the metrics either
+        final ExpandableMetrics metrics = mMetrics;
+        if (metrics == null || AsyncHolderInflater.isCreating()) {
+            return createViewHolder(parent, viewType, mViewTypeRegistry.getUserType(viewType));
+        }
+
+        final long start = metrics.beginCreate(viewType);
+        ViewHolder holder =
+                createViewHolder(parent, viewType, mViewTypeRegistry.getUserType(viewType));
+        metrics.endCreate(viewType, start);
+        return holder;
+    }
+
+    private ViewHolder createViewHolder(ViewGroup parent, int viewType, int userType) {
+        switch (mViewTypeRegistry.getKind(viewType)) {
+            case ViewTypeRegistry.KIND_GROUP:
+                return mExpandableListAdapter.onCreateGroupViewHolder(parent, userType);
+            case ViewTypeRegistry.KIND_CHILD:
+                return mExpandableListAdapter.onCreateChildViewHolder(parent, userType);
+            default:
+                return findFixedItem(viewType).onCreateViewHolder(parent);
         }
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public final void onBindViewHolder(ViewHolder holder, int position) {
+        final ExpandableMetrics metrics = mMetrics;
+        final long start = metrics != null ? metrics.beginBind(holder.getItemViewType()) : 0;
+
         PositionInfo positionInfo = getUnflattenedPos(position);
-        // headers and footers do nothing
-        if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_GROUP) {
+        if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_HEADER) {
+            mHeaders.get(positionInfo.child).onBindViewHolder(holder);
+        } else if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_FOOTER) {
+            mFooters.get(positionInfo.child).onBindViewHolder(holder);
+        } else if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_GROUP) {
             mExpandableListAdapter.onBindGroupViewHolder(holder, positionInfo.group);
         } else if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_CHILD) {
             mExpandableListAdapter.onBindChildViewHolder(holder, positionInfo.group,
                     positionInfo.child);
         }
-    }
-
-    boolean isHeader(int maskedViewType) {
-        return (maskedViewType & PACKED_TYPE_MASK_HEADER) != 0;
-    }
 
-    boolean isFooter(int maskedViewType) {
-        return (maskedViewType & PACKED_TYPE_MASK_FOOTER) != 0;
+        if (metrics != null) {
+            metrics.endBind(holder.getItemViewType(), start);
+        }
     }
 
-    boolean isGroupType(int maskedViewType) {
-        return (maskedViewType & PACKED_TYPE_MASK_GROUP) != 0;
-    }
+    @Override
+    @SuppressWarnings("unchecked")
+    public final void onBindViewHolder(ViewHolder holder, int position, List<Object> payloads) {
+        final ExpandableMetrics metrics = mMetrics;
+        final long start = metrics != null ? metrics.beginBind(holder.getItemViewType()) : 0;
 
-    boolean isChildType(int maskedViewType) {
-        return (maskedViewType & PACKED_TYPE_MASK_CHILD) != 0;
-    }
+        PositionInfo positionInfo = getUnflattenedPos(position);
+        if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_HEADER) {
+            mHeaders.get(positionInfo.child).onBindViewHolder(holder);
+        } else if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_FOOTER) {
+            mFooters.get(positionInfo.child).onBindViewHolder(holder);
+        } else if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_GROUP) {
+            mExpandableListAdapter.onBindGroupViewHolder(holder, positionInfo.group, payloads);
+        } else if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_CHILD) {
+            mExpandableListAdapter.onBindChildViewHolder(holder, positionInfo.group,
+                    positionInfo.child, payloads);
+        }
 
-    private int getHeaderPosition(int maskedViewType) {
-        return maskedViewType ^ PACKED_TYPE_MASK_HEADER;
+        if (metrics != null) {
+            metrics.endBind(holder.getItemViewType(), start);
+        }
     }
 
-    private int getFooterPosition(int maskedViewType) {
-        return (maskedViewType ^ PACKED_TYPE_MASK_FOOTER) >> PACKED_POSITION_SHIFT_FOOTER;
+    boolean isGroupType(int viewType) {
+        return isRegistered(viewType)
+                && mViewTypeRegistry.getKind(viewType) == ViewTypeRegistry.KIND_GROUP;
     }
 
-    private int getUnmaskedGroupType(int maskedViewType) {
-        return (maskedViewType ^ PACKED_TYPE_MASK_GROUP) >> PACKED_POSITION_SHIFT_GROUP;
+    boolean isChildType(int viewType) {
+        return isRegistered(viewType)
+                && mViewTypeRegistry.getKind(viewType) == ViewTypeRegistry.KIND_CHILD;
     }
 
-    private int getUnmaskedChildType(int maskedViewType) {
-        return maskedViewType ^ PACKED_TYPE_MASK_CHILD;
+    private boolean isRegistered(int viewType) {
+        return viewType >= 0 && viewType < mViewTypeRegistry.getIdCount();
     }
 
     /**
      * if this position is a group, return a {@link PositionInfo} with real group position,
      * else this position is a child, return a {@link PositionInfo} with group's position and child's
+     * <p>
+     * <p>The returned instance belongs to {@link #mPositionCache}, copy it if needed.</p>
      */
     PositionInfo getUnflattenedPos(int position) {
-        if (mPositionTmp == null || mPositionTmp.position != position) {
-            mPositionTmp = binarySearchPosition(position);
+        final ExpandableMetrics metrics = mMetrics;
+        PositionInfo positionInfo = mPositionCache.get(position);
+        if (positionInfo == null) {
+            PositionInfo last = mPositionCache.getLast();
+            int lastGroup = last.group;
+            int lastChild = last.child;
+            int lastPosition = last.position;
+            int lastType = last.type;
+
+            positionInfo = mPositionCache.obtain();
+            if (stepPosition(lastGroup, lastChild, lastPosition, lastType, position,
+                    positionInfo)) {
+                if (metrics != null) {
+                    metrics.onLookupStep();
+                }
+            } else {
+                binarySearchPosition(position, positionInfo);
+                if (metrics != null) {
+                    metrics.onLookupSearch();
+                }
+            }
+        } else if (metrics != null) {
+            metrics.onLookupHit();
         }
 
-        return mPositionTmp;
+        if (positionInfo.type == PositionInfo.PACKED_POSITION_TYPE_GROUP
+                && mGroupIndex.isPending(positionInfo.group)) {
+            queueResolve(positionInfo.group);
+        }
+        return positionInfo;
     }
 
     /**
-     * binary search
+     * resolve a position next to the last looked up one without searching, RecyclerView mostly
+     * walks positions one by one while scrolling
+     *
+     * @return false if <code>position</code> is not next to the last group or child
      */
-    private PositionInfo binarySearchPosition(int position) {
-        int realPosition = position;
-        if (position < getHeaderCount()) {
-            return new PositionInfo(-1, position, position,
-                    PositionInfo.PACKED_POSITION_TYPE_HEADER);
+    private boolean stepPosition(int lastGroup, int lastChild, int lastPosition,
+            int lastType, int position, PositionInfo out) {
+        if (lastType != PositionInfo.PACKED_POSITION_TYPE_GROUP
+                && lastType != PositionInfo.PACKED_POSITION_TYPE_CHILD
+                || lastPosition == -1) {
+            return false;
         }
 
-        position -= getHeaderCount();
-        if (position >= mItemCount) {
-            return new PositionInfo(-1, position - mItemCount, position,
-                    PositionInfo.PACKED_POSITION_TYPE_FOOTER);
+        int flatPosition = position - getHeaderCount();
+        if (flatPosition < 0 || flatPosition >= mGroupIndex.getTotal()) {
+            return false;
         }
 
-        final ArrayList<GroupInfo> groupInfos = mExpGroupInfos;
-        final int groupSize = groupInfos.size();
-
-        int start = 0;
-        int end = groupSize - 1;
-
-        int middle = 0;
-        GroupInfo groupInfo;
+        if (position == lastPosition + 1) {
+            if (lastChild + 2 < mGroupIndex.getGroupSize(lastGroup)) {
+                out.set(lastGroup, lastChild + 1, position,
+                        PositionInfo.PACKED_POSITION_TYPE_CHILD);
+            } else {
+                out.set(lastGroup + 1, -1, position, PositionInfo.PACKED_POSITION_TYPE_GROUP);
+            }
+            return true;
+        } else if (position == lastPosition - 1) {
+            if (lastType == PositionInfo.PACKED_POSITION_TYPE_CHILD) {
+                if (lastChild > 0) {
+                    out.set(lastGroup, lastChild - 1, position,
+                            PositionInfo.PACKED_POSITION_TYPE_CHILD);
+                } else {
+                    out.set(lastGroup, -1, position, PositionInfo.PACKED_POSITION_TYPE_GROUP);
+                }
+            } else {
+                int lastChildOfPrevious = mGroupIndex.getGroupSize(lastGroup - 1) - 2;
+                if (lastChildOfPrevious >= 0) {
+                    out.set(lastGroup - 1, lastChildOfPrevious, position,
+                            PositionInfo.PACKED_POSITION_TYPE_CHILD);
+                } else {
+                    out.set(lastGroup - 1, -1, position,
+                            PositionInfo.PACKED_POSITION_TYPE_GROUP);
+                }
+            }
+            return true;
+        }
+        return false;
+    }
 
-        while (start <= end) {
-            middle = start + (end - start) / 2;
-            groupInfo = groupInfos.get(middle);
+    /**
+     * same as {@link #getUnflattenedPos(int)}, but writes into the caller's <code>out</code>
+     *
+     * @return <code>out</code>
+     */
+    PositionInfo getUnflattenedPos(int position, PositionInfo out) {
+        PositionInfo positionInfo = getUnflattenedPos(position);
+        out.set(positionInfo.group, positionInfo.child, positionInfo.position, positionInfo.type);
+        return out;
+    }
 
-            if (position < groupInfo.fpos) {
-                end = middle - 1;
-            } else if (position > groupInfo.lpos) {
-                start = middle + 1;
-            } else if (position == groupInfo.fpos) {
-                return new PositionInfo(middle, -1, realPosition,
-                        PositionInfo.PACKED_POSITION_TYPE_GROUP);
-            } else if (position <= groupInfo.lpos) {
-                return new PositionInfo(middle, position - groupInfo.fpos - 1, realPosition,
-                        PositionInfo.PACKED_POSITION_TYPE_CHILD);
+    /**
+     * binary descent on {@link #mGroupIndex}, O(log G)
+     */
+    private void binarySearchPosition(int position, PositionInfo out) {
+        final int group = mGroupIndex.getGroupAt(position);
+        if (group == -1) {
+            if (position < getHeaderCount()) {
+                out.set(-1, position, position, PositionInfo.PACKED_POSITION_TYPE_HEADER);
             } else {
-                throw new RuntimeException("mExpGroupInfos must have error");
+                out.set(-1, position - getHeaderCount() - mGroupIndex.getTotal(), position,
+                        PositionInfo.PACKED_POSITION_TYPE_FOOTER);
             }
+            return;
         }
 
-        return new PositionInfo(middle, -1, -1, PositionInfo.PACKED_POSITION_TYPE_GROUP);
+        final int child = position - mGroupIndex.getGroupPosition(group) - 1;
+        if (child == -1) {
+            out.set(group, -1, position, PositionInfo.PACKED_POSITION_TYPE_GROUP);
+        } else {
+            out.set(group, child, position, PositionInfo.PACKED_POSITION_TYPE_CHILD);
+        }
     }
 
     /**
-     * record group info
+     * a header or footer added as a ViewHolder, always bound already
      */
-    private static class GroupInfo {
-        /**
-         * group name position
-         */
-        int fpos;
-        /**
-         * last child position
-         */
-        int lpos;
+    private static class HolderItem extends FixedItem<ViewHolder> {
+
+        final ViewHolder mHolder;
+
+        final int mSerial;
+
+        HolderItem(ViewHolder holder, int serial) {
+            mHolder = holder;
+            mSerial = serial;
+        }
+
+        @Override
+        public int getItemViewType() {
+            return mSerial;
+        }
+
+        @Override
+        public ViewHolder onCreateViewHolder(ViewGroup parent) {
+            return mHolder;
+        }
 
-        public GroupInfo(int fpos, int lpos) {
-            this.fpos = fpos;
-            this.lpos = lpos;
+        @Override
+        public void onBindViewHolder(ViewHolder holder) {
         }
     }
 }
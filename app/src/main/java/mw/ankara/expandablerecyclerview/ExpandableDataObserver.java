@@ -109,4 +109,106 @@ public interface ExpandableDataObserver {
      * @param position Position of the group that was removed
      */
     void notifyExpandableGroupRemoved(int group, int position);
+
+    /**
+     * Notify any registered observers that <code>groupCount</code> groups starting at
+     * <code>groupStart</code> have been newly inserted, together with their children.
+     *
+     * @param groupStart Position of the first group that was inserted
+     * @param groupCount Number of groups inserted
+     */
+    void notifyExpandableGroupRangeInserted(int groupStart, int groupCount);
+
+    /**
+     * Notify any registered observers that <code>groupCount</code> groups previously located at
+     * <code>groupStart</code> have been removed, together with their children.
+     *
+     * @param groupStart Position of the first group that was removed
+     * @param groupCount Number of groups removed
+     */
+    void notifyExpandableGroupRangeRemoved(int groupStart, int groupCount);
+
+    /**
+     * Notify any registered observers that the group previously located at
+     * <code>fromGroup</code> has been moved to <code>toGroup</code>, together with its children.
+     *
+     * @param fromGroup Previous position of the group
+     * @param toGroup   New position of the group
+     */
+    void notifyExpandableGroupMoved(int fromGroup, int toGroup);
+
+    /**
+     * Notify any registered observers that <code>childCount</code> children starting at
+     * <code>childStart</code> have been newly inserted into the group. Unlike
+     * {@link #notifyExpandableRemoved}, the group is kept when it has no child left.
+     *
+     * @param group      Position of the group for which has these children
+     * @param childStart Position of the first child that was inserted
+     * @param childCount Number of children inserted
+     */
+    void notifyExpandableChildRangeInserted(int group, int childStart, int childCount);
+
+    /**
+     * Notify any registered observers that <code>childCount</code> children previously
+     * located at <code>childStart</code> have been removed from the group.
+     *
+     * @param group      Position of the group for which had these children
+     * @param childStart Position of the first child that was removed
+     * @param childCount Number of children removed
+     */
+    void notifyExpandableChildRangeRemoved(int group, int childStart, int childCount);
+
+    /**
+     * Notify any registered observers that the child previously located at
+     * <code>fromChild</code> has been moved to <code>toChild</code> in the same group.
+     *
+     * @param group     Position of the group for which has this child
+     * @param fromChild Previous position of the child
+     * @param toChild   New position of the child
+     */
+    void notifyExpandableChildMoved(int group, int fromChild, int toChild);
+
+    /**
+     * Notify any registered observers that <code>childCount</code> children starting at
+     * <code>childStart</code> have changed, with an optional payload for a partial rebind.
+     * <p>
+     * <p>This is an item change event, not a structural change event.</p>
+     *
+     * @param group      Position of the group for which has these children
+     * @param childStart Position of the first child that was changed
+     * @param childCount Number of children changed
+     * @param payload    Optional parameter, null to rebind the whole rows
+     */
+    void notifyExpandableChildRangeChanged(int group, int childStart, int childCount,
+            Object payload);
+
+    /**
+     * Notify any registered observers that the group item has changed, with an optional payload
+     * for a partial rebind. Its children are not affected.
+     *
+     * @param group   Position of the group that was changed
+     * @param payload Optional parameter, null to rebind the whole row
+     */
+    void notifyExpandableGroupChanged(int group, Object payload);
+
+    /**
+     * Notify any registered observers that the data set has been turned into a new snapshot by
+     * the operations of <code>result</code>, which is dispatched to every observer.
+     *
+     * @param result Operations from the previous snapshot to the current one
+     */
+    void notifyExpandableDiffDispatched(ExpandableDiff.Result result);
+
+    /**
+     * Notify any registered observers that a batch of changes starts. Changes notified until
+     * {@link #notifyExpandableBatchFinished()} are applied to the observer's structure as they
+     * come, but their notifications are coalesced and dispatched when the batch finishes.
+     */
+    void notifyExpandableBatchStarted();
+
+    /**
+     * Notify any registered observers that the batch started by
+     * {@link #notifyExpandableBatchStarted()} finished.
+     */
+    void notifyExpandableBatchFinished();
 }
@@ -0,0 +1,651 @@
+package mw.ankara.expandablerecyclerview;
+
+import mw.ankara.expandablerecyclerview.index.ExpandableIndex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Two-level diff of two expandable snapshots, groups first and then the children of the groups
+ * kept in both, matched by stable IDs. {@link #calculate} is meant to run on a worker thread,
+ * the {@link Result} is dispatched to an {@link ExpandableListAdapter} on the main thread as
+ * incremental notifications, so ViewHolders and animations survive a refresh.
+ * <p>
+ * <p>Items kept in both snapshots are moved as little as possible: the longest run of them
+ * already in the new order stays in place and only the others are moved, all in
+ * O(n log n).</p>
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+public final class ExpandableDiff {
+
+    private static final int OP_REMOVE_GROUPS = 0;
+    private static final int OP_MOVE_GROUP = 1;
+    private static final int OP_INSERT_GROUPS = 2;
+    private static final int OP_CHANGE_GROUP = 3;
+    private static final int OP_REMOVE_CHILDREN = 4;
+    private static final int OP_MOVE_CHILD = 5;
+    private static final int OP_INSERT_CHILDREN = 6;
+    private static final int OP_CHANGE_CHILD = 7;
+
+    /**
+     * ints taken by every recorded operation: type, group, start/from, count/to
+     */
+    private static final int OP_SIZE = 4;
+
+    private ExpandableDiff() {
+    }
+
+    /**
+     * Compare two snapshots, called on the calculating thread only.
+     *
+     * @param callback access to the old and the new snapshot
+     * @return the operations turning the old snapshot into the new one
+     */
+    public static Result calculate(Callback callback) {
+        Result result = new Result();
+
+        final int oldGroupCount = callback.getOldGroupCount();
+        final int newGroupCount = callback.getNewGroupCount();
+        long[] oldGroupIds = new long[oldGroupCount];
+        for (int i = 0; i < oldGroupCount; ++i) {
+            oldGroupIds[i] = callback.getOldGroupId(i);
+        }
+        long[] newGroupIds = new long[newGroupCount];
+        for (int i = 0; i < newGroupCount; ++i) {
+            newGroupIds[i] = callback.getNewGroupId(i);
+        }
+
+        int[] newToOldGroup = diffLevel(oldGroupIds, newGroupIds, -1, result);
+
+        int[] newChildCounts = new int[newGroupCount];
+        for (int newGroup = 0; newGroup < newGroupCount; ++newGroup) {
+            final int newChildCount = callback.getNewChildCount(newGroup);
+            newChildCounts[newGroup] = newChildCount;
+            int oldGroup = newToOldGroup[newGroup];
+            if (oldGroup == -1) {
+                continue;
+            }
+
+            if (!callback.areGroupContentsTheSame(oldGroup, newGroup)) {
+                result.add(OP_CHANGE_GROUP, newGroup, -1, 0,
+                        callback.getGroupChangePayload(oldGroup, newGroup));
+            }
+
+            final int oldChildCount = callback.getOldChildCount(oldGroup);
+            long[] oldChildIds = new long[oldChildCount];
+            for (int i = 0; i < oldChildCount; ++i) {
+                oldChildIds[i] = callback.getOldChildId(oldGroup, i);
+            }
+            long[] newChildIds = new long[newChildCount];
+            for (int i = 0; i < newChildCount; ++i) {
+                newChildIds[i] = callback.getNewChildId(newGroup, i);
+            }
+
+            int[] newToOldChild = diffLevel(oldChildIds, newChildIds, newGroup, result);
+            for (int newChild = 0; newChild < newChildCount; ++newChild) {
+                int oldChild = newToOldChild[newChild];
+                if (oldChild != -1 && !callback.areChildContentsTheSame(oldGroup, oldChild,
+                        newGroup, newChild)) {
+                    result.add(OP_CHANGE_CHILD, newGroup, newChild, 0,
+                            callback.getChildChangePayload(oldGroup, oldChild, newGroup,
+                                    newChild));
+                }
+            }
+        }
+
+        result.setNewGroups(newToOldGroup, newChildCounts);
+        return result;
+    }
+
+    /**
+     * Record removals, moves and insertions turning <code>oldIds</code> into
+     * <code>newIds</code>, in this order so insertions land on their final positions.
+     *
+     * @param group -1 for the group level, else the new position of the group of the children
+     * @return old position of every new item, -1 for inserted ones
+     */
+    private static int[] diffLevel(long[] oldIds, long[] newIds, int group, Result result) {
+        final boolean children = group != -1;
+        final int oldCount = oldIds.length;
+        final int newCount = newIds.length;
+
+        HashMap<Long, Integer> newPositions = new HashMap<>(newCount * 2);
+        for (int i = newCount - 1; i >= 0; --i) {
+            newPositions.put(newIds[i], i);
+        }
+
+        // match by id, a duplicated id only matches once
+        int[] oldToNew = new int[oldCount];
+        int[] newToOld = new int[newCount];
+        Arrays.fill(newToOld, -1);
+        for (int i = 0; i < oldCount; ++i) {
+            Integer newPosition = newPositions.get(oldIds[i]);
+            if (newPosition != null && newToOld[newPosition] == -1) {
+                oldToNew[i] = newPosition;
+                newToOld[newPosition] = i;
+            } else {
+                oldToNew[i] = -1;
+            }
+        }
+
+        // removals, from the end so earlier positions stay valid
+        for (int i = oldCount - 1; i >= 0; --i) {
+            if (oldToNew[i] == -1) {
+                int end = i;
+                while (i > 0 && oldToNew[i - 1] == -1) {
+                    --i;
+                }
+                if (children) {
+                    result.add(OP_REMOVE_CHILDREN, group, i, end - i + 1, null);
+                } else {
+                    result.add(OP_REMOVE_GROUPS, -1, i, end - i + 1, null);
+                }
+            }
+        }
+
+        // the kept items, by their new positions in the old order
+        int keptCount = 0;
+        int[] kept = new int[oldCount];
+        int[] keptIndexes = new int[newCount];
+        for (int i = 0; i < oldCount; ++i) {
+            if (oldToNew[i] != -1) {
+                keptIndexes[oldToNew[i]] = keptCount;
+                kept[keptCount++] = oldToNew[i];
+            }
+        }
+
+        // each moved item goes right before the next kept one, which has stayed or been moved
+        // the same way before, so it ends up right before a staying item, or the end of the list.
+        // Every kept item has a slot at its old place, moved ones get another one in the run of
+        // slots before that staying item, in the new order. The positions then come from a
+        // Fenwick tree over the taken slots, O(log n) per move.
+        boolean[] stays = longestIncreasingRun(kept, keptCount, newCount);
+        int[] runs = new int[newCount];
+        int[] runEnds = new int[keptCount + 1];
+        int run = keptCount;
+        for (int j = newCount - 1; j >= 0; --j) {
+            if (newToOld[j] != -1) {
+                if (stays[j]) {
+                    run = keptIndexes[j];
+                } else {
+                    runs[j] = run;
+                    ++runEnds[run];
+                }
+            }
+        }
+        int[] oldSlots = new int[keptCount];
+        int slotCount = 0;
+        for (int k = 0; k <= keptCount; ++k) {
+            slotCount += runEnds[k];
+            runEnds[k] = slotCount;
+            if (k < keptCount) {
+                oldSlots[k] = slotCount++;
+            }
+        }
+
+        int[] taken = new int[slotCount + 1];
+        for (int k = 0; k < keptCount; ++k) {
+            addToSlot(taken, oldSlots[k], 1);
+        }
+        if (!children) {
+            result.setGroupSlots(oldToNew, oldSlots, slotCount);
+        }
+        for (int j = newCount - 1; j >= 0; --j) {
+            if (newToOld[j] == -1 || stays[j]) {
+                continue;
+            }
+
+            // a moved item is never right before the next kept one already, it would extend
+            // the longest run otherwise
+            int fromSlot = oldSlots[keptIndexes[j]];
+            int toSlot = --runEnds[runs[j]];
+            int from = sumBeforeSlot(taken, fromSlot);
+            addToSlot(taken, fromSlot, -1);
+            int to = sumBeforeSlot(taken, toSlot);
+            addToSlot(taken, toSlot, 1);
+            if (children) {
+                result.add(OP_MOVE_CHILD, group, from, to, null);
+            } else {
+                result.addGroupMove(from, to, fromSlot, toSlot);
+            }
+        }
+
+        // insertions, in the new order every earlier item is in place already
+        for (int j = 0; j < newCount; ++j) {
+            if (newToOld[j] == -1) {
+                int start = j;
+                while (j + 1 < newCount && newToOld[j + 1] == -1) {
+                    ++j;
+                }
+                if (children) {
+                    result.add(OP_INSERT_CHILDREN, group, start, j - start + 1, null);
+                } else {
+                    result.add(OP_INSERT_GROUPS, -1, start, j - start + 1, null);
+                }
+            }
+        }
+
+        return newToOld;
+    }
+
+    /**
+     * @return flags by value of the items in the longest increasing subsequence of
+     * <code>values</code>, O(n log n)
+     */
+    private static boolean[] longestIncreasingRun(int[] values, int count, int valueRange) {
+        // tails[k]: index of the smallest tail of an increasing run of length k + 1
+        int[] tails = new int[count];
+        int[] previous = new int[count];
+        int length = 0;
+        for (int i = 0; i < count; ++i) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                ++length;
+            }
+        }
+
+        boolean[] stays = new boolean[valueRange];
+        for (int i = length > 0 ? tails[length - 1] : -1; i != -1; i = previous[i]) {
+            stays[values[i]] = true;
+        }
+        return stays;
+    }
+
+    /**
+     * add to the slot of a 1-based Fenwick tree
+     */
+    private static void addToSlot(int[] tree, int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return sum of the slots before <code>slot</code>
+     */
+    private static int sumBeforeSlot(int[] tree, int slot) {
+        int sum = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Access to the two snapshots to compare, all methods are called on the calculating thread.
+     */
+    public abstract static class Callback {
+
+        public abstract int getOldGroupCount();
+
+        public abstract int getNewGroupCount();
+
+        public abstract int getOldChildCount(int oldGroup);
+
+        public abstract int getNewChildCount(int newGroup);
+
+        /**
+         * @return stable id of the group, groups of the same id are the same item
+         */
+        public abstract long getOldGroupId(int oldGroup);
+
+        public abstract long getNewGroupId(int newGroup);
+
+        /**
+         * @return stable id of the child, unique within its group
+         */
+        public abstract long getOldChildId(int oldGroup, int oldChild);
+
+        public abstract long getNewChildId(int newGroup, int newChild);
+
+        /**
+         * Called for groups of the same id only.
+         *
+         * @return false if the group item needs to be rebound
+         */
+        public abstract boolean areGroupContentsTheSame(int oldGroup, int newGroup);
+
+        /**
+         * Called for children of the same id only.
+         *
+         * @return false if the child item needs to be rebound
+         */
+        public abstract boolean areChildContentsTheSame(int oldGroup, int oldChild,
+                int newGroup, int newChild);
+
+        /**
+         * Called for changed groups only.
+         *
+         * @return payload for a partial rebind, null by default to rebind the whole row
+         */
+        public Object getGroupChangePayload(int oldGroup, int newGroup) {
+            return null;
+        }
+
+        /**
+         * Called for changed children only.
+         *
+         * @return payload for a partial rebind, null by default to rebind the whole row
+         */
+        public Object getChildChangePayload(int oldGroup, int oldChild, int newGroup,
+                int newChild) {
+            return null;
+        }
+    }
+
+    /**
+     * Receives the operations of a {@link Result} in order, group and child positions are the
+     * ones of the snapshot as far as it is updated.
+     */
+    public interface UpdateCallback {
+
+        void onGroupsRemoved(int groupStart, int groupCount);
+
+        void onGroupMoved(int fromGroup, int toGroup);
+
+        void onGroupsInserted(int groupStart, int groupCount);
+
+        void onGroupChanged(int group, Object payload);
+
+        void onChildrenRemoved(int group, int childStart, int childCount);
+
+        void onChildMoved(int group, int fromChild, int toChild);
+
+        void onChildrenInserted(int group, int childStart, int childCount);
+
+        void onChildChanged(int group, int child, Object payload);
+    }
+
+    /**
+     * Operations turning the old snapshot into the new one, in group and child positions.
+     */
+    public static final class Result {
+
+        private int[] mOps = new int[OP_SIZE * 16];
+
+        /**
+         * payload of every operation, null for all but some changes
+         */
+        private Object[] mPayloads = new Object[16];
+
+        private int mOpCount;
+
+        /**
+         * old group of every new group, -1 for inserted ones, and the other way round
+         */
+        private int[] mNewToOldGroup;
+        private int[] mOldToNewGroup;
+
+        private int[] mNewChildCounts;
+
+        /**
+         * layout of the new snapshot, all groups collapsed. Built on the calculating thread and
+         * taken by the first connector the result is dispatched to.
+         */
+        private ExpandableIndex mIndex;
+
+        /**
+         * slots of the kept old groups in the old order, and the slots every group move goes
+         * from and to, see {@link #diffLevel}
+         */
+        private int[] mKeptGroupSlots;
+        private int mGroupSlotCount;
+        private int[] mGroupMoveSlots = new int[16];
+        private int mGroupMoveCount;
+
+        Result() {
+        }
+
+        private void add(int type, int group, int a, int b, Object payload) {
+            if (mOps.length < (mOpCount + 1) * OP_SIZE) {
+                mOps = Arrays.copyOf(mOps, mOps.length * 2);
+                mPayloads = Arrays.copyOf(mPayloads, mPayloads.length * 2);
+            }
+            mPayloads[mOpCount] = payload;
+
+            int offset = mOpCount * OP_SIZE;
+            mOps[offset] = type;
+            mOps[offset + 1] = group;
+            mOps[offset + 2] = a;
+            mOps[offset + 3] = b;
+            ++mOpCount;
+        }
+
+        private void addGroupMove(int from, int to, int fromSlot, int toSlot) {
+            if (mGroupMoveSlots.length < (mGroupMoveCount + 1) * 2) {
+                mGroupMoveSlots = Arrays.copyOf(mGroupMoveSlots, mGroupMoveSlots.length * 2);
+            }
+            mGroupMoveSlots[mGroupMoveCount * 2] = fromSlot;
+            mGroupMoveSlots[mGroupMoveCount * 2 + 1] = toSlot;
+            ++mGroupMoveCount;
+            add(OP_MOVE_GROUP, -1, from, to, null);
+        }
+
+        private void setGroupSlots(int[] oldToNew, int[] keptSlots, int slotCount) {
+            mOldToNewGroup = oldToNew;
+            mKeptGroupSlots = keptSlots;
+            mGroupSlotCount = slotCount;
+        }
+
+        private void setNewGroups(int[] newToOld, int[] childCounts) {
+            mNewToOldGroup = newToOld;
+            mNewChildCounts = childCounts;
+            mIndex = buildIndex(childCounts);
+        }
+
+        private static ExpandableIndex buildIndex(int[] childCounts) {
+            ExpandableIndex index = new ExpandableIndex();
+            index.setGroupCount(childCounts.length);
+            for (int i = 0; i < childCounts.length; ++i) {
+                index.setGroup(i, childCounts[i], false);
+            }
+            return index;
+        }
+
+        /**
+         * @return the layout of the new snapshot with all groups collapsed, owned by the caller
+         */
+        ExpandableIndex takeIndex() {
+            ExpandableIndex index = mIndex != null ? mIndex : buildIndex(mNewChildCounts);
+            mIndex = null;
+            return index;
+        }
+
+        /**
+         * @return the old position of the group, -1 if it is inserted
+         */
+        int getOldGroup(int newGroup) {
+            return mNewToOldGroup[newGroup];
+        }
+
+        /**
+         * @return the new position of the group, -1 if it is removed
+         */
+        int getNewGroup(int oldGroup) {
+            return mOldToNewGroup[oldGroup];
+        }
+
+        /**
+         * @return true if both snapshots are the same
+         */
+        public boolean isEmpty() {
+            return mOpCount == 0;
+        }
+
+        /**
+         * Replay the operations as one batch on the main thread. The adapter must already
+         * return the new snapshot.
+         */
+        public void dispatchUpdatesTo(ExpandableListAdapter adapter) {
+            adapter.beginBatch();
+            adapter.notifyDiffDispatched(this);
+            adapter.endBatch();
+        }
+
+        /**
+         * Replay the operations as item notifications, without updating any index on the way:
+         * removals take the positions of the old layout, moves a Fenwick tree of the group sizes
+         * over the slots of {@link #diffLevel}, and the rest walks the new layout in order, the
+         * groups before the updated one being final already. O(G + K log G) for K operations.
+         *
+         * @param oldIndex layout of the old snapshot
+         * @param newIndex layout of the new snapshot, with the expanded state of the old one
+         */
+        void dispatchUpdatesTo(ExpandableIndex oldIndex, ExpandableIndex newIndex,
+                NotifyBatcher batcher) {
+            final int headerCount = newIndex.getHeaderCount();
+
+            // kept groups keep their old size until their children are updated
+            int[] sizes = new int[mGroupSlotCount];
+            int[] slots = new int[mGroupSlotCount + 1];
+            for (int oldGroup = 0, k = 0; oldGroup < mOldToNewGroup.length; ++oldGroup) {
+                if (mOldToNewGroup[oldGroup] != -1) {
+                    int slot = mKeptGroupSlots[k++];
+                    sizes[slot] = oldIndex.getGroupSize(oldGroup);
+                    addToSlot(slots, slot, sizes[slot]);
+                }
+            }
+
+            int i = 0;
+            int move = 0;
+            int group = 0;
+            int groupStart = 0;
+            for (; i < mOpCount && mOps[i * OP_SIZE] <= OP_INSERT_GROUPS; ++i) {
+                int offset = i * OP_SIZE;
+                int a = mOps[offset + 2];
+                int b = mOps[offset + 3];
+                switch (mOps[offset]) {
+                    case OP_REMOVE_GROUPS: {
+                        int start = oldIndex.getGroupStart(a);
+                        batcher.onRemoved(headerCount + start,
+                                oldIndex.getGroupStart(a + b) - start);
+                        break;
+                    }
+                    case OP_MOVE_GROUP: {
+                        int fromSlot = mGroupMoveSlots[move * 2];
+                        int toSlot = mGroupMoveSlots[move * 2 + 1];
+                        ++move;
+                        int size = sizes[fromSlot];
+                        int from = headerCount + sumBeforeSlot(slots, fromSlot);
+                        addToSlot(slots, fromSlot, -size);
+                        int to = headerCount + sumBeforeSlot(slots, toSlot);
+                        addToSlot(slots, toSlot, size);
+                        sizes[toSlot] = size;
+
+                        // RecyclerView moves a single item at a time
+                        for (int row = 0; row < size; ++row) {
+                            if (from < to) {
+                                batcher.onMoved(from, to + size - 1);
+                            } else {
+                                batcher.onMoved(from + size - 1, to);
+                            }
+                        }
+                        break;
+                    }
+                    case OP_INSERT_GROUPS: {
+                        for (; group < a; ++group) {
+                            int oldGroup = mNewToOldGroup[group];
+                            groupStart += oldGroup != -1 ? oldIndex.getGroupSize(oldGroup)
+                                    : newIndex.getGroupSize(group);
+                        }
+                        int count = 0;
+                        for (; group < a + b; ++group) {
+                            count += newIndex.getGroupSize(group);
+                        }
+                        batcher.onInserted(headerCount + groupStart, count);
+                        groupStart += count;
+                        break;
+                    }
+                }
+            }
+
+            group = 0;
+            groupStart = 0;
+            for (; i < mOpCount; ++i) {
+                int offset = i * OP_SIZE;
+                int type = mOps[offset];
+                int a = mOps[offset + 2];
+                int b = mOps[offset + 3];
+                for (; group < mOps[offset + 1]; ++group) {
+                    groupStart += newIndex.getGroupSize(group);
+                }
+
+                final int position = headerCount + groupStart;
+                if (type == OP_CHANGE_GROUP) {
+                    batcher.onChanged(position, 1, mPayloads[i]);
+                    continue;
+                }
+                // children of collapsed groups are not shown
+                if (!newIndex.isExpanded(group)) {
+                    continue;
+                }
+                switch (type) {
+                    case OP_REMOVE_CHILDREN:
+                        batcher.onRemoved(position + 1 + a, b);
+                        break;
+                    case OP_MOVE_CHILD:
+                        batcher.onMoved(position + 1 + a, position + 1 + b);
+                        break;
+                    case OP_INSERT_CHILDREN:
+                        batcher.onInserted(position + 1 + a, b);
+                        break;
+                    case OP_CHANGE_CHILD:
+                        batcher.onChanged(position + 1 + a, 1, mPayloads[i]);
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Replay the operations in order, e.g. on a copy of the old snapshot.
+         */
+        public void dispatchUpdatesTo(UpdateCallback callback) {
+            for (int i = 0; i < mOpCount; ++i) {
+                int offset = i * OP_SIZE;
+                int group = mOps[offset + 1];
+                int a = mOps[offset + 2];
+                int b = mOps[offset + 3];
+                switch (mOps[offset]) {
+                    case OP_REMOVE_GROUPS:
+                        callback.onGroupsRemoved(a, b);
+                        break;
+                    case OP_MOVE_GROUP:
+                        callback.onGroupMoved(a, b);
+                        break;
+                    case OP_INSERT_GROUPS:
+                        callback.onGroupsInserted(a, b);
+                        break;
+                    case OP_CHANGE_GROUP:
+                        callback.onGroupChanged(group, mPayloads[i]);
+                        break;
+                    case OP_REMOVE_CHILDREN:
+                        callback.onChildrenRemoved(group, a, b);
+                        break;
+                    case OP_MOVE_CHILD:
+                        callback.onChildMoved(group, a, b);
+                        break;
+                    case OP_INSERT_CHILDREN:
+                        callback.onChildrenInserted(group, a, b);
+                        break;
+                    case OP_CHANGE_CHILD:
+                        callback.onChildChanged(group, a, mPayloads[i]);
+                        break;
+                }
+            }
+        }
+    }
+}
@@ -4,6 +4,8 @@ import android.database.Observable;
 import android.support.v7.widget.RecyclerView;
 import android.view.ViewGroup;
 
+import java.util.List;
+
 /**
  * @author masa
  * @since 11/16/15
@@ -13,6 +15,36 @@ public abstract class ExpandableListAdapter<GVH extends RecyclerView.ViewHolder,
 
     // part of Observer Pattern * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
 
+    private int mBatchDepth;
+
+    /**
+     * Start a batch of changes, the notifications until the matching {@link #endBatch()} are
+     * merged into as few ranged RecyclerView notifications as possible. Batches can be nested,
+     * only the outermost one dispatches.
+     */
+    public void beginBatch() {
+        if (mBatchDepth++ == 0) {
+            for (ExpandableDataObserver observer : mObservers) {
+                observer.notifyExpandableBatchStarted();
+            }
+        }
+    }
+
+    /**
+     * finish the batch started by {@link #beginBatch()}
+     */
+    public void endBatch() {
+        if (mBatchDepth == 0) {
+            throw new RuntimeException("endBatch() called without beginBatch()");
+        }
+
+        if (--mBatchDepth == 0) {
+            for (ExpandableDataObserver observer : mObservers) {
+                observer.notifyExpandableBatchFinished();
+            }
+        }
+    }
+
     /**
      * notify all notifications
      */
@@ -74,6 +106,153 @@ public abstract class ExpandableListAdapter<GVH extends RecyclerView.ViewHolder,
         }
     }
 
+    /**
+     * notify an item inserted
+     *
+     * @param group    Position of the group for which has this child
+     * @param child    Position of the child in the group
+     * @param position Position of the child that was inserted
+     */
+    public void notifyItemInserted(int group, int child, int position) {
+        for (ExpandableDataObserver observer : mObservers) {
+            observer.notifyExpandableItemInserted(group, child, position);
+        }
+    }
+
+    /**
+     * notify a group inserted, together with its children if it is expanded by default
+     *
+     * @param group Position of the group that was inserted
+     */
+    public void notifyGroupInserted(int group) {
+        notifyGroupRangeInserted(group, 1);
+    }
+
+    /**
+     * notify groups inserted, together with their children if they are expanded by default
+     *
+     * @param groupStart Position of the first group that was inserted
+     * @param groupCount Number of groups inserted
+     */
+    public void notifyGroupRangeInserted(int groupStart, int groupCount) {
+        for (ExpandableDataObserver observer : mObservers) {
+            observer.notifyExpandableGroupRangeInserted(groupStart, groupCount);
+        }
+    }
+
+    /**
+     * notify groups removed, together with their children
+     *
+     * @param groupStart Position of the first group that was removed
+     * @param groupCount Number of groups removed
+     */
+    public void notifyGroupRangeRemoved(int groupStart, int groupCount) {
+        for (ExpandableDataObserver observer : mObservers) {
+            observer.notifyExpandableGroupRangeRemoved(groupStart, groupCount);
+        }
+    }
+
+    /**
+     * notify a group moved, together with its children
+     *
+     * @param fromGroup Previous position of the group
+     * @param toGroup   New position of the group
+     */
+    public void notifyGroupMoved(int fromGroup, int toGroup) {
+        for (ExpandableDataObserver observer : mObservers) {
+            observer.notifyExpandableGroupMoved(fromGroup, toGroup);
+        }
+    }
+
+    /**
+     * notify children inserted, the group is kept even if it had no child
+     *
+     * @param group      Position of the group for which has these children
+     * @param childStart Position of the first child that was inserted
+     * @param childCount Number of children inserted
+     */
+    public void notifyChildRangeInserted(int group, int childStart, int childCount) {
+        for (ExpandableDataObserver observer : mObservers) {
+            observer.notifyExpandableChildRangeInserted(group, childStart, childCount);
+        }
+    }
+
+    /**
+     * notify children removed, the group is kept even if it has no child left
+     *
+     * @param group      Position of the group for which had these children
+     * @param childStart Position of the first child that was removed
+     * @param childCount Number of children removed
+     */
+    public void notifyChildRangeRemoved(int group, int childStart, int childCount) {
+        for (ExpandableDataObserver observer : mObservers) {
+            observer.notifyExpandableChildRangeRemoved(group, childStart, childCount);
+        }
+    }
+
+    /**
+     * notify a child moved within its group
+     *
+     * @param group     Position of the group for which has this child
+     * @param fromChild Previous position of the child
+     * @param toChild   New position of the child
+     */
+    public void notifyChildMoved(int group, int fromChild, int toChild) {
+        for (ExpandableDataObserver observer : mObservers) {
+            observer.notifyExpandableChildMoved(group, fromChild, toChild);
+        }
+    }
+
+    /**
+     * notify children changed, the payload is passed to RecyclerView for a partial rebind
+     *
+     * @param group      Position of the group for which has these children
+     * @param childStart Position of the first child that was changed
+     * @param childCount Number of children changed
+     * @param payload    Optional parameter, null to rebind the whole rows
+     */
+    public void notifyChildRangeChanged(int group, int childStart, int childCount,
+            Object payload) {
+        for (ExpandableDataObserver observer : mObservers) {
+            observer.notifyExpandableChildRangeChanged(group, childStart, childCount, payload);
+        }
+    }
+
+    /**
+     * notify a group item changed, the payload is passed to
+     * {@link #onBindGroupViewHolder(RecyclerView.ViewHolder, int, List)}
+     *
+     * @param group   Position of the group that was changed
+     * @param payload Optional parameter, null to rebind the whole row
+     */
+    public void notifyGroupChanged(int group, Object payload) {
+        for (ExpandableDataObserver observer : mObservers) {
+            observer.notifyExpandableGroupChanged(group, payload);
+        }
+    }
+
+    /**
+     * notify a child item changed, the payload is passed to
+     * {@link #onBindChildViewHolder(RecyclerView.ViewHolder, int, int, List)}
+     *
+     * @param group   Position of the group for which has this child
+     * @param child   Position of the child in the group
+     * @param payload Optional parameter, null to rebind the whole row
+     */
+    public void notifyChildChanged(int group, int child, Object payload) {
+        notifyChildRangeChanged(group, child, 1, payload);
+    }
+
+    /**
+     * notify the snapshot changed by the operations of a diff, see
+     * {@link ExpandableDiff.Result#dispatchUpdatesTo(ExpandableListAdapter)}
+     */
+    void notifyDiffDispatched(ExpandableDiff.Result result) {
+        for (ExpandableDataObserver observer : mObservers) {
+            observer.notifyExpandableDiffDispatched(result);
+        }
+    }
+
     /**
      * override super method to support param type ExpandableDataObserver
      */
@@ -107,11 +286,81 @@ public abstract class ExpandableListAdapter<GVH extends RecyclerView.ViewHolder,
      */
     public abstract int getChildCount(int groupPosition);
 
+    /**
+     * Whether a group is expanded when it first shows up. A collapsed group takes a single row
+     * and {@link #getChildCount} is not called for it until it is expanded.
+     *
+     * @param groupPosition the position of the group
+     * @return true by default, all groups are expanded
+     */
+    public boolean isGroupExpandedByDefault(int groupPosition) {
+        return true;
+    }
+
+    /**
+     * Whether child counts are resolved lazily. A group expanded by default then shows up
+     * collapsed, and {@link #getChildCount} is called for it when it comes near the viewport,
+     * so a list of many groups opens without asking all of them.
+     *
+     * @return false by default, child counts of expanded groups are asked up front
+     */
+    public boolean hasLazyChildCounts() {
+        return false;
+    }
+
+    /**
+     * Gets an estimate of the number of children in a group whose child count is not resolved
+     * yet, only used for sizing the scrollbar when {@link #hasLazyChildCounts()}.
+     *
+     * @param groupPosition the position of the group
+     * @return 0 by default
+     */
+    public int getEstimatedChildCount(int groupPosition) {
+        return 0;
+    }
+
+    /**
+     * Whether {@link #getGroupId} and {@link #getChildId} identify the same data across changes.
+     * RecyclerView then keeps the holders of items whose id survives
+     * {@link #notifyExpandableDataChanged()}. Adapters set on the same list in turn must agree
+     * on it.
+     *
+     * @return false by default
+     */
+    public boolean hasStableIds() {
+        return false;
+    }
+
+    /**
+     * Gets the id of a group, only used when {@link #hasStableIds()}. Ids must be unique among
+     * the groups and within 0 and {@link Integer#MAX_VALUE}, they are combined with the child
+     * ids into 64 bit item ids. Ids out of range throw.
+     *
+     * @param groupPosition the position of the group
+     * @return the position by default
+     */
+    public long getGroupId(int groupPosition) {
+        return groupPosition;
+    }
+
+    /**
+     * Gets the id of a child, only used when {@link #hasStableIds()}. Ids must be unique among
+     * the children of the group and within 0 and <code>0xFFFFFFFFL</code>, ids out of range
+     * throw.
+     *
+     * @param groupPosition the position of the group that contains the child
+     * @param childPosition the position of the child within the group
+     * @return the position by default
+     */
+    public long getChildId(int groupPosition, int childPosition) {
+        return childPosition;
+    }
+
     /**
      * Gets the view type of the specified group.
      *
      * @param groupPosition the position of the group for which the view type is wanted
-     * @return integer value identifying the type of the view needed to represent the group item at position. Type codes need positive number but not be contiguous.
+     * @return integer value identifying the type of the view needed to represent the group item at position. Any int is allowed, type codes need not be contiguous.
      */
     public abstract int getGroupItemViewType(int groupPosition);
 
@@ -120,7 +369,7 @@ public abstract class ExpandableListAdapter<GVH extends RecyclerView.ViewHolder,
      *
      * @param groupPosition the position of the group that contains the child
      * @param childPosition the position of the child within the group for which the view type is wanted
-     * @return integer value identifying the type of the view needed to represent the group item at position. Type codes need positive number but not be contiguous.
+     * @return integer value identifying the type of the view needed to represent the group item at position. Any int is allowed, type codes need not be contiguous.
      */
     public abstract int getChildItemViewType(int groupPosition, int childPosition);
 
@@ -152,6 +401,21 @@ public abstract class ExpandableListAdapter<GVH extends RecyclerView.ViewHolder,
      */
     public abstract void onBindGroupViewHolder(GVH holder, int groupPosition);
 
+    /**
+     * Called by RecyclerView to display the group data at the specified position, with the
+     * payloads of the changes notified since the last bind. Override it to update only the views
+     * touched by the payloads, an empty list means a full bind.
+     * <p>
+     * <p>Calls {@link #onBindGroupViewHolder(RecyclerView.ViewHolder, int)} by default.</p>
+     *
+     * @param holder        The ViewHolder which should be updated to represent the contents of the item at the given position in the data set
+     * @param groupPosition The position of the group item within the adapter's data set
+     * @param payloads      The payloads passed to {@link #notifyGroupChanged}, may be empty
+     */
+    public void onBindGroupViewHolder(GVH holder, int groupPosition, List<Object> payloads) {
+        onBindGroupViewHolder(holder, groupPosition);
+    }
+
     /**
      * Called by RecyclerView to display the child data at the specified position.
      * This method should update the contents of the {@link android.support.v7.widget.RecyclerView.ViewHolder#itemView}
@@ -163,6 +427,24 @@ public abstract class ExpandableListAdapter<GVH extends RecyclerView.ViewHolder,
      */
     public abstract void onBindChildViewHolder(CVH holder, int groupPosition, int childPosition);
 
+    /**
+     * Called by RecyclerView to display the child data at the specified position, with the
+     * payloads of the changes notified since the last bind. Override it to update only the views
+     * touched by the payloads, an empty list means a full bind.
+     * <p>
+     * <p>Calls {@link #onBindChildViewHolder(RecyclerView.ViewHolder, int, int)} by default.</p>
+     *
+     * @param holder        The ViewHolder which should be updated to represent the contents of the item at the given position in the data set
+     * @param groupPosition The position of the group item within the adapter's data set
+     * @param childPosition The position of the child item within the group
+     * @param payloads      The payloads passed to {@link #notifyChildChanged} or
+     *                      {@link #notifyChildRangeChanged}, may be empty
+     */
+    public void onBindChildViewHolder(CVH holder, int groupPosition, int childPosition,
+            List<Object> payloads) {
+        onBindChildViewHolder(holder, groupPosition, childPosition);
+    }
+
     /**
      * <p>Called when a user attempt to expand/collapse a group item by tapping.</p>
      * <p>Tips: If you want to set your own click event listener to group items, make this method always return false.
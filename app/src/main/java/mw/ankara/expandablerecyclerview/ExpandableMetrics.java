@@ -0,0 +1,336 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timings and counters of the hot paths of an {@link ExpandableRecyclerView}: ViewHolder
+ * creation and binding per view type, position lookups, index mutations and data set changes.
+ * The same spans are wrapped in {@link Trace} sections on API 18 and above, so they show up in
+ * systrace.
+ * <p>
+ * <p>Nothing is measured until a listener is set with
+ * {@link ExpandableRecyclerView#setMetricsListener}, the adapter only checks a null field then.
+ * Holders created ahead on a background thread are not counted, only the main thread work.</p>
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+public final class ExpandableMetrics {
+
+    /**
+     * kinds of the view types of the histograms
+     */
+    public static final int KIND_GROUP = ViewTypeRegistry.KIND_GROUP;
+    public static final int KIND_CHILD = ViewTypeRegistry.KIND_CHILD;
+    public static final int KIND_FIXED = ViewTypeRegistry.KIND_FIXED;
+
+    private static final boolean TRACE_ENABLED =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    private static final String[] CREATE_SECTIONS = {
+            "ExpandableAdapter#createGroup", "ExpandableAdapter#createChild",
+            "ExpandableAdapter#createFixed", "ExpandableAdapter#createFixed"};
+
+    private static final String[] BIND_SECTIONS = {
+            "ExpandableAdapter#bindGroup", "ExpandableAdapter#bindChild",
+            "ExpandableAdapter#bindFixed", "ExpandableAdapter#bindFixed"};
+
+    private static final String MUTATION_SECTION = "ExpandableAdapter#mutate";
+
+    public interface Listener {
+
+        /**
+         * Called on the main thread when the list stops scrolling and on
+         * {@link ExpandableRecyclerView#reportMetrics()}, the metrics are reset right after.
+         * Copy the values needed later.
+         */
+        void onMetricsReport(ExpandableMetrics metrics);
+    }
+
+    /**
+     * latencies of one view type in power of 2 nanosecond buckets
+     */
+    public static final class Histogram {
+
+        private static final int BUCKET_COUNT = 40;
+
+        private final int mKind;
+
+        private final int mViewType;
+
+        private final int[] mBuckets = new int[BUCKET_COUNT];
+
+        private int mCount;
+
+        private long mTotalNanos;
+
+        private long mMaxNanos;
+
+        Histogram(int kind, int viewType) {
+            mKind = kind;
+            mViewType = viewType;
+        }
+
+        void record(long nanos) {
+            int bucket = nanos <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+            ++mBuckets[Math.min(bucket, BUCKET_COUNT - 1)];
+            ++mCount;
+            mTotalNanos += nanos;
+            mMaxNanos = Math.max(mMaxNanos, nanos);
+        }
+
+        /**
+         * @return one of the KIND constants
+         */
+        public int getKind() {
+            return mKind;
+        }
+
+        /**
+         * @return the view type given by the adapter, or by the fixed item
+         */
+        public int getViewType() {
+            return mViewType;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        public long getTotalNanos() {
+            return mTotalNanos;
+        }
+
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        public int getBucketCount() {
+            return BUCKET_COUNT;
+        }
+
+        /**
+         * @return samples which took from <code>2^bucket</code> up to
+         * <code>2^(bucket + 1)</code> nanoseconds
+         */
+        public int getBucket(int bucket) {
+            return mBuckets[bucket];
+        }
+
+        /**
+         * @param percentile from 0 to 100
+         * @return upper bound of the bucket holding the percentile, 0 if there is no sample
+         */
+        public long getPercentileNanos(double percentile) {
+            long rank = (long) Math.ceil(mCount * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; ++i) {
+                seen += mBuckets[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(1L << (i + 1), mMaxNanos);
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * registry of the adapter, for the kinds and user types of the view types
+     */
+    private ViewTypeRegistry mViewTypeRegistry;
+
+    /**
+     * histograms by adapter view type
+     */
+    private final SparseArray<Histogram> mCreateHistograms = new SparseArray<>();
+
+    private final SparseArray<Histogram> mBindHistograms = new SparseArray<>();
+
+    private int mLookupHitCount;
+
+    private int mLookupStepCount;
+
+    private int mLookupSearchCount;
+
+    private int mMutationCount;
+
+    private long mMutationNanos;
+
+    private int mDataSetChangedCount;
+
+    private long mStartMillis;
+
+    ExpandableMetrics() {
+        reset();
+    }
+
+    void setViewTypeRegistry(ViewTypeRegistry viewTypeRegistry) {
+        mViewTypeRegistry = viewTypeRegistry;
+    }
+
+    /**
+     * @return a histogram per view type with holders created since the last report
+     */
+    public List<Histogram> getCreateHistograms() {
+        return toList(mCreateHistograms);
+    }
+
+    /**
+     * @return a histogram per view type with holders bound since the last report
+     */
+    public List<Histogram> getBindHistograms() {
+        return toList(mBindHistograms);
+    }
+
+    /**
+     * @return lookups answered by the cache of recent positions
+     */
+    public int getLookupHitCount() {
+        return mLookupHitCount;
+    }
+
+    /**
+     * @return lookups missing the cache, they were either stepped from the last position or
+     * searched in the index
+     */
+    public int getLookupMissCount() {
+        return mLookupStepCount + mLookupSearchCount;
+    }
+
+    /**
+     * @return missed lookups which needed a search in the index, O(log G) each
+     */
+    public int getLookupSearchCount() {
+        return mLookupSearchCount;
+    }
+
+    /**
+     * @return structural changes applied to the index, including expanding and collapsing
+     */
+    public int getIndexMutationCount() {
+        return mMutationCount;
+    }
+
+    /**
+     * @return time spent applying the structural changes, RecyclerView notifications included
+     */
+    public long getIndexMutationNanos() {
+        return mMutationNanos;
+    }
+
+    /**
+     * @return whole data set changes, each of them rebinds every visible item
+     */
+    public int getDataSetChangedCount() {
+        return mDataSetChangedCount;
+    }
+
+    /**
+     * @return time covered by these metrics, for turning the counts into rates
+     */
+    public long getElapsedMillis() {
+        return SystemClock.uptimeMillis() - mStartMillis;
+    }
+
+    void reset() {
+        mCreateHistograms.clear();
+        mBindHistograms.clear();
+        mLookupHitCount = 0;
+        mLookupStepCount = 0;
+        mLookupSearchCount = 0;
+        mMutationCount = 0;
+        mMutationNanos = 0;
+        mDataSetChangedCount = 0;
+        mStartMillis = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * @return start time to pass to {@link #endCreate}
+     */
+    long beginCreate(int viewType) {
+        beginSection(CREATE_SECTIONS[mViewTypeRegistry.getKind(viewType)]);
+        return System.nanoTime();
+    }
+
+    void endCreate(int viewType, long startNanos) {
+        record(mCreateHistograms, viewType, System.nanoTime() - startNanos);
+        endSection();
+    }
+
+    long beginBind(int viewType) {
+        beginSection(BIND_SECTIONS[mViewTypeRegistry.getKind(viewType)]);
+        return System.nanoTime();
+    }
+
+    void endBind(int viewType, long startNanos) {
+        record(mBindHistograms, viewType, System.nanoTime() - startNanos);
+        endSection();
+    }
+
+    long beginMutation() {
+        beginSection(MUTATION_SECTION);
+        return System.nanoTime();
+    }
+
+    void endMutation(long startNanos) {
+        ++mMutationCount;
+        mMutationNanos += System.nanoTime() - startNanos;
+        endSection();
+    }
+
+    void onLookupHit() {
+        ++mLookupHitCount;
+    }
+
+    void onLookupStep() {
+        ++mLookupStepCount;
+    }
+
+    void onLookupSearch() {
+        ++mLookupSearchCount;
+    }
+
+    void onDataSetChanged() {
+        ++mDataSetChangedCount;
+    }
+
+    private void record(SparseArray<Histogram> histograms, int viewType, long nanos) {
+        Histogram histogram = histograms.get(viewType);
+        if (histogram == null) {
+            int kind = mViewTypeRegistry.getKind(viewType);
+            histogram = new Histogram(kind == ViewTypeRegistry.KIND_HOLDER ? KIND_FIXED : kind,
+                    mViewTypeRegistry.getUserType(viewType));
+            histograms.put(viewType, histogram);
+        }
+        histogram.record(nanos);
+    }
+
+    private static List<Histogram> toList(SparseArray<Histogram> histograms) {
+        List<Histogram> list = new ArrayList<>(histograms.size());
+        for (int i = 0; i < histograms.size(); ++i) {
+            list.add(histograms.valueAt(i));
+        }
+        return list;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginSection(String name) {
+        if (TRACE_ENABLED) {
+            Trace.beginSection(name);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endSection() {
+        if (TRACE_ENABLED) {
+            Trace.endSection();
+        }
+    }
+}
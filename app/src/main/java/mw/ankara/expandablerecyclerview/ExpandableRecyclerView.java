@@ -1,12 +1,20 @@
 package mw.ankara.expandablerecyclerview;
 
 import android.content.Context;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.v4.os.ParcelableCompat;
+import android.support.v4.os.ParcelableCompatCreatorCallbacks;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.helper.ItemTouchHelper;
 import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
 import android.view.View;
 
+import java.util.concurrent.Executor;
+
 /**
  * @author masa
  * @since 11/16/15
@@ -17,6 +25,24 @@ public class ExpandableRecyclerView extends RecyclerView {
 
     private ExpandableAdapter mConnector;
 
+    private ExpandableViewPool mViewPool;
+
+    private StickyGroupDecoration mStickyGroupDecoration;
+
+    /**
+     * state restored before the adapter was set, applied by {@link #setAdapter}
+     */
+    private SavedState mPendingSavedState;
+
+    private ExpandableMetrics.Listener mMetricsListener;
+
+    /**
+     * metrics gathered for {@link #mMetricsListener}, null without a listener
+     */
+    private ExpandableMetrics mMetrics;
+
+    private OnScrollListener mMetricsScrollListener;
+
     public ExpandableRecyclerView(Context context) {
         super(context);
         init(context);
@@ -40,6 +66,10 @@ public class ExpandableRecyclerView extends RecyclerView {
         ItemSwipeCallback itemSwipeCallback = new ItemSwipeCallback();
         ItemTouchHelper helper = new ItemTouchHelper(itemSwipeCallback);
         helper.attachToRecyclerView(this);
+
+        addOnItemTouchListener(new GroupClickListener(context));
+
+        setRecycledViewPool(new ExpandableViewPool());
     }
 
     @Override
@@ -57,6 +87,12 @@ public class ExpandableRecyclerView extends RecyclerView {
             // Create the connector
             if (mConnector == null) {
                 mConnector = new ExpandableAdapter(adapter);
+                mConnector.setViewTypeRegistry(mViewPool.getViewTypeRegistry());
+                mConnector.setMetrics(mMetrics);
+            } else if (adapter.hasStableIds() != mConnector.hasStableIds()) {
+                // stable ids can't change while the connector is observed, by RecyclerView or
+                // by decorations, a new connector takes over the state of the list
+                mConnector = new ExpandableAdapter(adapter, mConnector);
             } else {
                 mConnector.setExpandableListAdapter(adapter);
             }
@@ -66,6 +102,120 @@ public class ExpandableRecyclerView extends RecyclerView {
 
         // Link the RecyclerView (superclass) to the expandable list data through the connector
         super.setAdapter(mConnector);
+
+        if (mConnector != null && mPendingSavedState != null) {
+            restoreState(mPendingSavedState);
+            mPendingSavedState = null;
+        }
+    }
+
+    /**
+     * Share an {@link ExpandableViewPool} with other ExpandableRecyclerViews, set it before the
+     * items are laid out. Other pools are not supported, the view types live in the pool.
+     */
+    @Override
+    public void setRecycledViewPool(RecycledViewPool pool) {
+        if (pool == null) {
+            pool = new ExpandableViewPool();
+        } else if (!(pool instanceof ExpandableViewPool)) {
+            throw new RuntimeException(
+                    "For ExpandableRecyclerView, use an ExpandableViewPool as RecycledViewPool");
+        }
+
+        mViewPool = (ExpandableViewPool) pool;
+        if (mConnector != null) {
+            mConnector.setViewTypeRegistry(mViewPool.getViewTypeRegistry());
+        }
+        super.setRecycledViewPool(pool);
+    }
+
+    /**
+     * warm up part, fill the pool up to <code>count</code> holders of the type while the main
+     * thread is idle, through {@link ExpandableListAdapter#onCreateGroupViewHolder}
+     */
+    public void warmUpGroupViews(int groupType, int count) {
+        checkAdapterSet();
+        mViewPool.warmUp(mConnector, this, mConnector.getGroupViewType(groupType), count);
+    }
+
+    /**
+     * fill the pool up to <code>count</code> holders of the type while the main thread is
+     * idle, through {@link ExpandableListAdapter#onCreateChildViewHolder}
+     */
+    public void warmUpChildViews(int childType, int count) {
+        checkAdapterSet();
+        mViewPool.warmUp(mConnector, this, mConnector.getChildViewType(childType), count);
+    }
+
+    /**
+     * async inflation part, group and child holders of the types given a target are created on
+     * a background thread ahead of time. Their onCreate methods in the adapter must be safe to
+     * call off the main thread.
+     *
+     * @param executor executor to create the holders on, null for a shared background thread
+     */
+    public void enableAsyncInflation(Executor executor) {
+        checkAdapterSet();
+        mConnector.setAsyncHolderInflater(new AsyncHolderInflater(mConnector, this, executor));
+    }
+
+    /**
+     * drop the ready holders and create all of them on the main thread again
+     */
+    public void disableAsyncInflation() {
+        if (mConnector != null) {
+            mConnector.setAsyncHolderInflater(null);
+        }
+    }
+
+    /**
+     * keep <code>count</code> group holders of the type ready, 0 to stop
+     */
+    public void setAsyncGroupInflationTarget(int groupType, int count) {
+        getAsyncHolderInflater().setTarget(mConnector.getGroupViewType(groupType), count);
+    }
+
+    /**
+     * keep <code>count</code> child holders of the type ready, 0 to stop. Set it to the
+     * children shown by a large group to expand it without creating any on the main thread.
+     */
+    public void setAsyncChildInflationTarget(int childType, int count) {
+        getAsyncHolderInflater().setTarget(mConnector.getChildViewType(childType), count);
+    }
+
+    /**
+     * @return holders of the types with a target taken ready from the background
+     */
+    public int getAsyncInflationHitCount() {
+        return getAsyncHolderInflater().getHitCount();
+    }
+
+    /**
+     * @return holders of the types with a target created on the main thread as none was ready
+     */
+    public int getAsyncInflationMissCount() {
+        return getAsyncHolderInflater().getMissCount();
+    }
+
+    public void resetAsyncInflationCounts() {
+        getAsyncHolderInflater().resetCounts();
+    }
+
+    private AsyncHolderInflater getAsyncHolderInflater() {
+        AsyncHolderInflater holderInflater =
+                mConnector != null ? mConnector.getAsyncHolderInflater() : null;
+        if (holderInflater == null) {
+            throw new RuntimeException(
+                    "For ExpandableRecyclerView, call enableAsyncInflation(Executor) first");
+        }
+        return holderInflater;
+    }
+
+    private void checkAdapterSet() {
+        if (mConnector == null) {
+            throw new RuntimeException(
+                    "For ExpandableRecyclerView, call setAdapter(ExpandableListAdapter) first");
+        }
     }
 
     /**
@@ -84,10 +234,24 @@ public class ExpandableRecyclerView extends RecyclerView {
     /**
      * header part
      */
+    public void addHeader(FixedItem header) {
+        mConnector.addHeader(header);
+    }
+
+    public void removeHeader(FixedItem header) {
+        mConnector.removeHeader(header);
+    }
+
+    /**
+     * @deprecated the holder can't be recycled and is shown at most once, use
+     * {@link #addHeader(FixedItem)}
+     */
+    @Deprecated
     public void addHeader(ViewHolder header) {
         mConnector.addHeader(header);
     }
 
+    @Deprecated
     public void removeHeader(ViewHolder header) {
         mConnector.removeHeader(header);
     }
@@ -99,10 +263,24 @@ public class ExpandableRecyclerView extends RecyclerView {
     /**
      * footer part
      */
+    public void addFooter(FixedItem footer) {
+        mConnector.addFooter(footer);
+    }
+
+    public void removeFooter(FixedItem footer) {
+        mConnector.removeFooter(footer);
+    }
+
+    /**
+     * @deprecated the holder can't be recycled and is shown at most once, use
+     * {@link #addFooter(FixedItem)}
+     */
+    @Deprecated
     public void addFooter(ViewHolder footer) {
         mConnector.addFooter(footer);
     }
 
+    @Deprecated
     public void removeFooter(ViewHolder footer) {
         mConnector.removeFooter(footer);
     }
@@ -111,6 +289,419 @@ public class ExpandableRecyclerView extends RecyclerView {
         return mConnector.getFooterCount();
     }
 
+    /**
+     * rebind a header or footer
+     */
+    public void notifyFixedItemChanged(FixedItem item) {
+        mConnector.notifyFixedItemChanged(item);
+    }
+
+    /**
+     * expand/collapse part
+     */
+    public boolean isGroupExpanded(int group) {
+        return mConnector.isGroupExpanded(group);
+    }
+
+    /**
+     * @return whether the group is expanded, {@link ExpandableListAdapter#onHookGroupExpand} may
+     * keep it collapsed
+     */
+    public boolean expandGroup(int group) {
+        return mConnector.expandGroup(group, false);
+    }
+
+    /**
+     * @return whether the group is collapsed, {@link ExpandableListAdapter#onHookGroupCollapse}
+     * may keep it expanded
+     */
+    public boolean collapseGroup(int group) {
+        return mConnector.collapseGroup(group, false);
+    }
+
+    /**
+     * expand every group in a single pass, see {@link #expandGroups(int[])}
+     *
+     * @return number of groups expanded by this call
+     */
+    public int expandAll() {
+        checkAdapterSet();
+        return mConnector.setGroupsExpanded(null, true);
+    }
+
+    /**
+     * @return number of groups collapsed by this call
+     */
+    public int collapseAll() {
+        checkAdapterSet();
+        return mConnector.setGroupsExpanded(null, false);
+    }
+
+    /**
+     * expand the groups in a single pass over the index, the inserted children are notified as
+     * ranges, or as one data set change when there are too many ranges to animate
+     *
+     * @return number of groups expanded by this call
+     */
+    public int expandGroups(int[] groups) {
+        checkAdapterSet();
+        return mConnector.setGroupsExpanded(groups, true);
+    }
+
+    /**
+     * sticky part, pin the group of the first visible item to the top
+     */
+    public void setStickyGroupsEnabled(boolean enabled) {
+        if (enabled && mStickyGroupDecoration == null) {
+            mStickyGroupDecoration = new StickyGroupDecoration();
+            addItemDecoration(mStickyGroupDecoration);
+        } else if (!enabled && mStickyGroupDecoration != null) {
+            removeItemDecoration(mStickyGroupDecoration);
+            mStickyGroupDecoration.detach();
+            mStickyGroupDecoration = null;
+        }
+    }
+
+    public boolean isStickyGroupsEnabled() {
+        return mStickyGroupDecoration != null;
+    }
+
+    ExpandableAdapter getConnector() {
+        return mConnector;
+    }
+
+    /**
+     * scrollbar part, children of groups whose child count is not resolved yet take their
+     * estimated share of the range
+     */
+    @Override
+    public int computeVerticalScrollRange() {
+        return scaleToEstimate(super.computeVerticalScrollRange());
+    }
+
+    @Override
+    public int computeVerticalScrollOffset() {
+        return scaleToEstimate(super.computeVerticalScrollOffset());
+    }
+
+    private int scaleToEstimate(int value) {
+        if (mConnector == null) {
+            return value;
+        }
+
+        int itemCount = mConnector.getItemCount();
+        int estimatedItemCount = mConnector.getEstimatedItemCount();
+        if (itemCount == 0 || itemCount == estimatedItemCount) {
+            return value;
+        }
+        return (int) ((long) value * estimatedItemCount / itemCount);
+    }
+
+    /**
+     * position part, write the group and child at adapter <code>position</code> into
+     * <code>out</code> without allocating
+     */
+    public PositionInfo getPositionInfo(int position, PositionInfo out) {
+        return mConnector.getUnflattenedPos(position, out);
+    }
+
+    /**
+     * @return adapter position of the group, O(log G)
+     */
+    public int getFlatPositionForGroup(int group) {
+        checkAdapterSet();
+        return mConnector.getGroupPosition(group);
+    }
+
+    /**
+     * @return adapter position of the child, {@link #NO_POSITION} if its group is collapsed or
+     * its child count is not resolved yet
+     */
+    public int getFlatPositionForChild(int group, int child) {
+        checkAdapterSet();
+        return mConnector.getChildPosition(group, child);
+    }
+
+    /**
+     * @return group of the item at the adapter position, -1 for headers and footers
+     */
+    public int getGroupForFlatPosition(int position) {
+        checkAdapterSet();
+        return mConnector.getUnflattenedPos(position).group;
+    }
+
+    /**
+     * scroll the group item to the top, only the items around it are laid out
+     */
+    public void scrollToGroup(int group) {
+        scrollToPositionWithOffset(getFlatPositionForGroup(group), 0);
+    }
+
+    /**
+     * scroll the child item to the top, nothing happens if it is not shown
+     */
+    public void scrollToChild(int group, int child) {
+        int position = getFlatPositionForChild(group, child);
+        if (position != NO_POSITION) {
+            scrollToPositionWithOffset(position, 0);
+        }
+    }
+
+    private void scrollToPositionWithOffset(int position, int offset) {
+        LayoutManager layoutManager = getLayoutManager();
+        if (layoutManager instanceof LinearLayoutManager) {
+            ((LinearLayoutManager) layoutManager).scrollToPositionWithOffset(position, offset);
+        } else {
+            scrollToPosition(position);
+        }
+    }
+
+    /**
+     * metrics part, measure the hot paths of the list and report them to <code>listener</code>
+     * each time the list stops scrolling, null to stop measuring
+     */
+    public void setMetricsListener(ExpandableMetrics.Listener listener) {
+        mMetricsListener = listener;
+        if (listener != null && mMetrics == null) {
+            mMetrics = new ExpandableMetrics();
+        } else if (listener == null) {
+            mMetrics = null;
+        }
+        if (mConnector != null) {
+            mConnector.setMetrics(mMetrics);
+        }
+
+        if (listener != null && mMetricsScrollListener == null) {
+            mMetricsScrollListener = new OnScrollListener() {
+                @Override
+                public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                    if (newState == SCROLL_STATE_IDLE) {
+                        reportMetrics();
+                    }
+                }
+            };
+            addOnScrollListener(mMetricsScrollListener);
+        }
+    }
+
+    /**
+     * report the metrics gathered since the last report to the listener and start over
+     */
+    public void reportMetrics() {
+        if (mMetricsListener != null) {
+            mMetricsListener.onMetricsReport(mMetrics);
+            mMetrics.reset();
+        }
+    }
+
+    /**
+     * saved state part, the expanded groups are saved as a bitset along with the group or child
+     * of the first visible item, so the list comes back at the same item after a configuration
+     * change
+     */
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        if (mConnector == null) {
+            if (mPendingSavedState != null) {
+                state.copyFrom(mPendingSavedState);
+            }
+            return state;
+        }
+
+        state.mGroupCount = mConnector.getGroupCount();
+        state.mExpandedGroups = mConnector.getExpandedGroups();
+        if (getChildCount() > 0) {
+            View anchor = getChildAt(0);
+            int position = getChildAdapterPosition(anchor);
+            if (position != NO_POSITION) {
+                PositionInfo info = mConnector.getUnflattenedPos(position);
+                state.mAnchorPosition = position;
+                state.mAnchorGroup = info.group;
+                state.mAnchorChild = info.type == PositionInfo.PACKED_POSITION_TYPE_CHILD
+                        ? info.child : -1;
+                state.mAnchorOffset = anchor.getTop() - getPaddingTop();
+            }
+        }
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        if (mConnector != null) {
+            restoreState(savedState);
+        } else {
+            mPendingSavedState = savedState;
+        }
+    }
+
+    private void restoreState(SavedState state) {
+        if (state.mExpandedGroups == null) {
+            return;
+        }
+
+        final int anchorGroup = state.mAnchorGroup < mConnector.getGroupCount()
+                ? state.mAnchorGroup : -1;
+        // the group of a child anchor is asked for its child count to find the child
+        mConnector.restoreExpandedGroups(state.mExpandedGroups, state.mGroupCount,
+                state.mAnchorChild != -1 ? anchorGroup : -1);
+
+        int position = state.mAnchorPosition;
+        if (anchorGroup != -1) {
+            position = state.mAnchorChild != -1
+                    ? mConnector.getChildPosition(anchorGroup, state.mAnchorChild) : NO_POSITION;
+            if (position == NO_POSITION) {
+                position = mConnector.getGroupPosition(anchorGroup);
+            }
+        }
+        if (position != NO_POSITION && position < mConnector.getItemCount()) {
+            scrollToPositionWithOffset(position, state.mAnchorOffset);
+        }
+    }
+
+    static class SavedState extends BaseSavedState {
+
+        int mGroupCount;
+
+        /**
+         * one bit per group, null if no adapter was set
+         */
+        long[] mExpandedGroups;
+
+        /**
+         * adapter position of the first visible item, used for headers and footers
+         */
+        int mAnchorPosition = NO_POSITION;
+
+        /**
+         * group of the first visible item, -1 for headers and footers
+         */
+        int mAnchorGroup = -1;
+
+        /**
+         * child of the first visible item, -1 for groups
+         */
+        int mAnchorChild = -1;
+
+        int mAnchorOffset;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        /**
+         * reads the super state itself, {@link android.view.AbsSavedState} reads it with the boot
+         * loader, which doesn't know the RecyclerView of the support library
+         */
+        SavedState(Parcel source, ClassLoader loader) {
+            super((Parcelable) source.readParcelable(
+                    loader != null ? loader : RecyclerView.class.getClassLoader()));
+            mGroupCount = source.readInt();
+            mExpandedGroups = source.createLongArray();
+            mAnchorPosition = source.readInt();
+            mAnchorGroup = source.readInt();
+            mAnchorChild = source.readInt();
+            mAnchorOffset = source.readInt();
+        }
+
+        void copyFrom(SavedState other) {
+            mGroupCount = other.mGroupCount;
+            mExpandedGroups = other.mExpandedGroups;
+            mAnchorPosition = other.mAnchorPosition;
+            mAnchorGroup = other.mAnchorGroup;
+            mAnchorChild = other.mAnchorChild;
+            mAnchorOffset = other.mAnchorOffset;
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            super.writeToParcel(dest, flags);
+            dest.writeInt(mGroupCount);
+            dest.writeLongArray(mExpandedGroups);
+            dest.writeInt(mAnchorPosition);
+            dest.writeInt(mAnchorGroup);
+            dest.writeInt(mAnchorChild);
+            dest.writeInt(mAnchorOffset);
+        }
+
+        /**
+         * a {@link Parcelable.ClassLoaderCreator} from API 13, so the super state is read with the
+         * loader of the app
+         */
+        public static final Parcelable.Creator<SavedState> CREATOR = ParcelableCompat.newCreator(
+                new ParcelableCompatCreatorCallbacks<SavedState>() {
+                    @Override
+                    public SavedState createFromParcel(Parcel source, ClassLoader loader) {
+                        return new SavedState(source, loader);
+                    }
+
+                    @Override
+                    public SavedState[] newArray(int size) {
+                        return new SavedState[size];
+                    }
+                });
+    }
+
+    /**
+     * expand or collapse a group when its item is tapped
+     */
+    private class GroupClickListener extends SimpleOnItemTouchListener {
+
+        private final GestureDetector mGestureDetector;
+
+        public GroupClickListener(Context context) {
+            mGestureDetector = new GestureDetector(context,
+                    new GestureDetector.SimpleOnGestureListener() {
+                        @Override
+                        public boolean onSingleTapUp(MotionEvent e) {
+                            return onGroupTapped(e);
+                        }
+                    });
+        }
+
+        @Override
+        public boolean onInterceptTouchEvent(RecyclerView rv, MotionEvent e) {
+            // never intercept, let the item views handle the touch as well
+            mGestureDetector.onTouchEvent(e);
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean onGroupTapped(MotionEvent e) {
+            View view = findChildViewUnder(e.getX(), e.getY());
+            if (view == null || mConnector == null) {
+                return false;
+            }
+
+            ViewHolder holder = getChildViewHolder(view);
+            int position = holder.getAdapterPosition();
+            if (position == NO_POSITION || !mConnector.isGroupType(holder.getItemViewType())) {
+                return false;
+            }
+
+            int group = mConnector.getUnflattenedPos(position).group;
+            boolean expand = !mConnector.isGroupExpanded(group);
+            if (!mAdapter.onCheckCanExpandOrCollapseGroup(holder, group,
+                    (int) (e.getX() - view.getLeft()), (int) (e.getY() - view.getTop()), expand)) {
+                return false;
+            }
+
+            if (expand) {
+                mConnector.expandGroup(group, true);
+            } else {
+                mConnector.collapseGroup(group, true);
+            }
+            return true;
+        }
+    }
+
     private class ItemSwipeCallback extends ItemTouchHelper.Callback {
 
         @Override
@@ -0,0 +1,244 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Companion of an {@link ExpandableListAdapter} for data arriving on other threads. Producers
+ * post updates from any thread to a lock-free queue, and the queue is drained on the main thread
+ * once per frame, inside a single batch of the adapter. An update changes the data of the adapter
+ * and notifies it, so the data and the group index are only ever touched by the main thread.
+ * <p>
+ * <p>The queue holds at most <code>capacity</code> updates. When producers outrun the frames,
+ * {@link #post} waits for the next frame to make room and {@link #offer} gives up.</p>
+ * <p>
+ * <p>Frames are followed with a Choreographer on API 16 and above, updates are drained on the
+ * next turn of the main looper below.</p>
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+public class ExpandableUpdateQueue<A extends ExpandableListAdapter<?, ?>> {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    public interface Update<A> {
+
+        /**
+         * Called on the main thread inside a batch, change the data and call the notify methods
+         * of the adapter as if on the main thread from the start.
+         */
+        void apply(A adapter);
+    }
+
+    private final A mAdapter;
+
+    private final int mCapacity;
+
+    private final ConcurrentLinkedQueue<Update<A>> mQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * one permit per free slot of the queue
+     */
+    private final Semaphore mPermits;
+
+    /**
+     * whether a drain is scheduled, so producers schedule one per frame
+     */
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+    /**
+     * whether updates are being applied, only touched by the main thread
+     */
+    private boolean mDraining;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final FrameDrainer mFrameDrainer;
+
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public ExpandableUpdateQueue(A adapter) {
+        this(adapter, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create it on the main thread.
+     *
+     * @param capacity updates held at most, also the most applied in one frame
+     */
+    public ExpandableUpdateQueue(A adapter, int capacity) {
+        if (!isMainThread()) {
+            throw new RuntimeException("For ExpandableUpdateQueue, create it on the main thread");
+        }
+        if (capacity <= 0) {
+            throw new RuntimeException("For ExpandableUpdateQueue, capacity must be positive");
+        }
+
+        mAdapter = adapter;
+        mCapacity = capacity;
+        mPermits = new Semaphore(capacity);
+        mFrameDrainer = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                ? new FrameDrainer(this) : null;
+    }
+
+    /**
+     * Post an update, waiting for room while the queue is full. On the main thread, the pending
+     * updates are applied right away to make room instead. An update posting from its
+     * {@link Update#apply} can't wait for the drain it runs in, it throws when the queue is full,
+     * use {@link #offer} there.
+     *
+     * @throws InterruptedException if the producer is interrupted while waiting
+     */
+    public void post(Update<A> update) throws InterruptedException {
+        if (isMainThread()) {
+            if (!mPermits.tryAcquire()) {
+                if (mDraining) {
+                    throw new RuntimeException("For ExpandableUpdateQueue, the queue is full, "
+                            + "use offer() to post from an update");
+                }
+                drain();
+                mPermits.acquire();
+            }
+        } else {
+            mPermits.acquire();
+        }
+        enqueue(update);
+    }
+
+    /**
+     * Post an update if the queue has room, may be called from any thread.
+     *
+     * @return false if the queue is full and the update was dropped
+     */
+    public boolean offer(Update<A> update) {
+        if (!mPermits.tryAcquire()) {
+            return false;
+        }
+        enqueue(update);
+        return true;
+    }
+
+    /**
+     * apply the pending updates now, on the main thread, e.g. before the state of the list is
+     * saved
+     */
+    public void flush() {
+        checkMainThread();
+        drain();
+    }
+
+    /**
+     * drop the pending updates, on the main thread
+     */
+    public void clear() {
+        checkMainThread();
+        int dropped = 0;
+        while (mQueue.poll() != null) {
+            ++dropped;
+        }
+        mPermits.release(dropped);
+    }
+
+    private void enqueue(Update<A> update) {
+        mQueue.offer(update);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (mScheduled.compareAndSet(false, true)) {
+            if (mFrameDrainer != null) {
+                mFrameDrainer.schedule();
+            } else {
+                mMainHandler.post(mDrainRunnable);
+            }
+        }
+    }
+
+    /**
+     * apply up to {@link #mCapacity} updates in one batch, the rest waits for the next frame. The
+     * slot of an update is freed once it is polled, so producers and the update itself may post
+     * while it is applied.
+     */
+    void drain() {
+        if (mDraining) {
+            // flush() or post() from an update, the running drain goes on
+            return;
+        }
+        // cleared first, an update posted while draining schedules the next frame
+        mScheduled.set(false);
+        Update<A> update = mQueue.poll();
+        if (update == null) {
+            return;
+        }
+
+        int applied = 0;
+        mDraining = true;
+        mAdapter.beginBatch();
+        try {
+            while (update != null) {
+                mPermits.release();
+                ++applied;
+                update.apply(mAdapter);
+                update = applied < mCapacity ? mQueue.poll() : null;
+            }
+        } finally {
+            mAdapter.endBatch();
+            mDraining = false;
+        }
+
+        if (!mQueue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    private static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    private static void checkMainThread() {
+        if (!isMainThread()) {
+            throw new RuntimeException(
+                    "For ExpandableUpdateQueue, call flush() and clear() on the main thread");
+        }
+    }
+
+    /**
+     * drains the queue at the start of the next frame, before the list lays out
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class FrameDrainer implements Choreographer.FrameCallback {
+
+        private final ExpandableUpdateQueue<?> mQueue;
+
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+
+        FrameDrainer(ExpandableUpdateQueue<?> queue) {
+            mQueue = queue;
+        }
+
+        /**
+         * may be called from any thread
+         */
+        void schedule() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mQueue.drain();
+        }
+    }
+}
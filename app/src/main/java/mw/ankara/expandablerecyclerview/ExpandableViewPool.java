@@ -0,0 +1,187 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseIntArray;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * A {@link RecyclerView.RecycledViewPool} which can be shared by several
+ * {@link ExpandableRecyclerView}s, e.g. the pages of a ViewPager. The view types are registered
+ * in the pool, so the lists sharing it agree on them, and their adapters must create the same
+ * ViewHolders for the same group, child and fixed item types.
+ * <p>
+ * <p>Holders can be created ahead of the first scroll with
+ * {@link ExpandableRecyclerView#warmUpGroupViews} and
+ * {@link ExpandableRecyclerView#warmUpChildViews}, one per idle pass of the main thread so the
+ * warm up never takes a whole frame.</p>
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+public class ExpandableViewPool extends RecyclerView.RecycledViewPool {
+
+    /**
+     * default max recycled views of RecyclerView for every type
+     */
+    private static final int DEFAULT_MAX_SCRAP = 5;
+
+    private final ViewTypeRegistry mViewTypeRegistry = new ViewTypeRegistry();
+
+    /**
+     * max recycled views by view type, the ones set explicitly only
+     */
+    private final SparseIntArray mMaxScrap = new SparseIntArray();
+
+    /**
+     * recycled holders by view type, the pool of RecyclerView doesn't tell
+     */
+    private final SparseIntArray mScrapCounts = new SparseIntArray();
+
+    private final ArrayList<WarmUpTask> mWarmUpTasks = new ArrayList<>();
+
+    private final MessageQueue.IdleHandler mWarmUpHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            return warmUpNext();
+        }
+    };
+
+    ViewTypeRegistry getViewTypeRegistry() {
+        return mViewTypeRegistry;
+    }
+
+    /**
+     * @param groupType the type from {@link ExpandableListAdapter#getGroupItemViewType}
+     * @param max       max number of recycled group views of the type
+     */
+    public void setMaxRecycledGroupViews(int groupType, int max) {
+        setMaxRecycledViews(mViewTypeRegistry.getId(ViewTypeRegistry.KIND_GROUP, groupType), max);
+    }
+
+    /**
+     * @param childType the type from {@link ExpandableListAdapter#getChildItemViewType}
+     * @param max       max number of recycled child views of the type
+     */
+    public void setMaxRecycledChildViews(int childType, int max) {
+        setMaxRecycledViews(mViewTypeRegistry.getId(ViewTypeRegistry.KIND_CHILD, childType), max);
+    }
+
+    /**
+     * @param fixedType the type from {@link FixedItem#getItemViewType}
+     * @param max       max number of recycled header and footer views of the type
+     */
+    public void setMaxRecycledFixedViews(int fixedType, int max) {
+        setMaxRecycledViews(mViewTypeRegistry.getId(ViewTypeRegistry.KIND_FIXED, fixedType), max);
+    }
+
+    @Override
+    public void setMaxRecycledViews(int viewType, int max) {
+        mMaxScrap.put(viewType, max);
+        mScrapCounts.put(viewType, Math.min(mScrapCounts.get(viewType), max));
+        super.setMaxRecycledViews(viewType, max);
+    }
+
+    @Override
+    public RecyclerView.ViewHolder getRecycledView(int viewType) {
+        RecyclerView.ViewHolder scrap = super.getRecycledView(viewType);
+        if (scrap != null) {
+            mScrapCounts.put(viewType, mScrapCounts.get(viewType) - 1);
+        }
+        return scrap;
+    }
+
+    @Override
+    public void putRecycledView(RecyclerView.ViewHolder scrap) {
+        // holders over the max are dropped by the pool
+        final int viewType = scrap.getItemViewType();
+        final int count = mScrapCounts.get(viewType);
+        if (count < mMaxScrap.get(viewType, DEFAULT_MAX_SCRAP)) {
+            mScrapCounts.put(viewType, count + 1);
+        }
+        super.putRecycledView(scrap);
+    }
+
+    @Override
+    public void clear() {
+        mScrapCounts.clear();
+        super.clear();
+    }
+
+    /**
+     * @return recycled holders of the view type in the pool
+     */
+    int getRecycledViewCount(int viewType) {
+        return mScrapCounts.get(viewType);
+    }
+
+    /**
+     * fill the pool up to <code>count</code> holders of the view type, created on the main
+     * thread when it is idle. The max recycled views of the type is raised to keep them all.
+     */
+    void warmUp(ExpandableAdapter adapter, ViewGroup parent, int viewType, int count) {
+        if (count <= 0) {
+            return;
+        }
+
+        if (mMaxScrap.get(viewType, DEFAULT_MAX_SCRAP) < count) {
+            setMaxRecycledViews(viewType, count);
+        }
+
+        if (mWarmUpTasks.isEmpty()) {
+            Looper.myQueue().addIdleHandler(mWarmUpHandler);
+        }
+        mWarmUpTasks.add(new WarmUpTask(adapter, parent, viewType, count));
+    }
+
+    /**
+     * drop the holders queued but not created yet
+     */
+    public void cancelWarmUp() {
+        if (!mWarmUpTasks.isEmpty()) {
+            mWarmUpTasks.clear();
+            Looper.myQueue().removeIdleHandler(mWarmUpHandler);
+        }
+    }
+
+    /**
+     * create a single holder, the tasks whose type is filled already by recycled holders are
+     * dropped
+     *
+     * @return true if more holders are queued
+     */
+    private boolean warmUpNext() {
+        while (!mWarmUpTasks.isEmpty()) {
+            WarmUpTask task = mWarmUpTasks.get(0);
+            if (getRecycledViewCount(task.mViewType) >= task.mCount) {
+                mWarmUpTasks.remove(0);
+                continue;
+            }
+
+            putRecycledView(task.mAdapter.createWarmUpViewHolder(task.mParent, task.mViewType));
+            return true;
+        }
+        return false;
+    }
+
+    private static class WarmUpTask {
+
+        final ExpandableAdapter mAdapter;
+
+        final ViewGroup mParent;
+
+        final int mViewType;
+
+        final int mCount;
+
+        WarmUpTask(ExpandableAdapter adapter, ViewGroup parent, int viewType, int count) {
+            mAdapter = adapter;
+            mParent = parent;
+            mViewType = viewType;
+            mCount = count;
+        }
+    }
+}
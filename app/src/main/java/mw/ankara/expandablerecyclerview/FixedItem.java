@@ -0,0 +1,48 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A header or footer row of an {@link ExpandableRecyclerView}. Fixed items are created and bound
+ * like groups and children, items of the same view type share and recycle their ViewHolders.
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+public abstract class FixedItem<VH extends RecyclerView.ViewHolder> {
+
+    private static final AtomicLong sNextStableId = new AtomicLong();
+
+    /**
+     * item id with stable ids, kept by the item wherever it is added
+     */
+    final long mStableId = sNextStableId.getAndIncrement();
+
+    /**
+     * Fixed items of the same view type must create the same kind of ViewHolder, the types are
+     * separated from the group and child ones.
+     *
+     * @return integer value identifying the type of the view of this item
+     */
+    public abstract int getItemViewType();
+
+    /**
+     * Called when RecyclerView needs a new {@link VH} of this item's view type, may be called
+     * on any item of the type.
+     *
+     * @param parent The ViewGroup into which the new View will be added after it is bound to an adapter position
+     * @return A new ViewHolder that holds a View of this item's view type
+     */
+    public abstract VH onCreateViewHolder(ViewGroup parent);
+
+    /**
+     * Called by RecyclerView to display this item, the holder may have shown another item of
+     * the same view type before.
+     *
+     * @param holder The ViewHolder which should be updated to represent this item
+     */
+    public abstract void onBindViewHolder(VH holder);
+}
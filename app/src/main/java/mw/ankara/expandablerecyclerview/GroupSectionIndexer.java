@@ -0,0 +1,162 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.support.v7.widget.RecyclerView;
+import android.widget.SectionIndexer;
+
+/**
+ * A {@link SectionIndexer} with one section per group of an {@link ExpandableRecyclerView}, for
+ * fast scrollers and section lists. Positions are looked up in the group index in O(log G) and
+ * jumps scroll straight to the group, without laying out the items in between.
+ * <p>
+ * <p>Create it after the adapter is set, it follows the adapter of the list when it is replaced
+ * and observes it until {@link #detach()}. The sections are built on first use and again when
+ * the group count changes or the data set changes, call {@link #invalidateSections()} if only
+ * the labels change.</p>
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+public abstract class GroupSectionIndexer implements SectionIndexer {
+
+    private final ExpandableRecyclerView mRecyclerView;
+
+    private final RecyclerView.AdapterDataObserver mDataObserver =
+            new RecyclerView.AdapterDataObserver() {
+                @Override
+                public void onChanged() {
+                    invalidateSections();
+                }
+
+                @Override
+                public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                    invalidateSections();
+                }
+            };
+
+    /**
+     * connector observed, the one of the list when the indexer was last used
+     */
+    private ExpandableAdapter mConnector;
+
+    private Object[] mSections;
+
+    public GroupSectionIndexer(ExpandableRecyclerView recyclerView) {
+        mRecyclerView = recyclerView;
+
+        if (recyclerView.getConnector() == null) {
+            throw new RuntimeException(
+                    "For GroupSectionIndexer, call setAdapter(ExpandableListAdapter) first");
+        }
+        attach(recyclerView.getConnector());
+    }
+
+    /**
+     * @return the section of the group shown by the fast scroller, its toString() is the label
+     */
+    protected abstract Object getSection(int group);
+
+    public void invalidateSections() {
+        mSections = null;
+    }
+
+    /**
+     * Stop observing the adapter of the list, call it when the indexer is dropped. It observes
+     * the adapter again if it is used afterwards.
+     */
+    public void detach() {
+        attach(null);
+    }
+
+    @Override
+    public Object[] getSections() {
+        final int groupCount = getGroupCount();
+        if (mSections == null || mSections.length != groupCount) {
+            mSections = new Object[groupCount];
+            for (int i = 0; i < groupCount; ++i) {
+                mSections[i] = getSection(i);
+            }
+        }
+        return mSections;
+    }
+
+    /**
+     * @return adapter position of the group of the section
+     */
+    @Override
+    public int getPositionForSection(int section) {
+        if (getGroupCount() == 0) {
+            return mConnector != null ? mRecyclerView.getHeaderCount() : 0;
+        }
+        return mRecyclerView.getFlatPositionForGroup(clampGroup(section));
+    }
+
+    /**
+     * @return section of the item at the adapter position, the first one for headers and the
+     * last one for footers
+     */
+    @Override
+    public int getSectionForPosition(int position) {
+        if (getGroupCount() == 0) {
+            return 0;
+        }
+
+        int group = mRecyclerView.getGroupForFlatPosition(position);
+        if (group == -1) {
+            return position < mRecyclerView.getHeaderCount() ? 0 : clampGroup(Integer.MAX_VALUE);
+        }
+        return group;
+    }
+
+    /**
+     * scroll the group of the section to the top
+     */
+    public void scrollToSection(int section) {
+        if (getGroupCount() > 0) {
+            mRecyclerView.scrollToGroup(clampGroup(section));
+        }
+    }
+
+    /**
+     * scroll to the section at <code>fraction</code> of the sections, for a dragged scroller
+     * thumb from 0 at the top to 1 at the bottom
+     *
+     * @return the section scrolled to, -1 if there is none
+     */
+    public int scrollToFraction(float fraction) {
+        final int groupCount = getGroupCount();
+        if (groupCount == 0) {
+            return -1;
+        }
+
+        int section = clampGroup((int) (fraction * groupCount));
+        mRecyclerView.scrollToGroup(section);
+        return section;
+    }
+
+    private int clampGroup(int group) {
+        return Math.max(0, Math.min(group, getGroupCount() - 1));
+    }
+
+    /**
+     * @return group count of the adapter of the list, following it if it was replaced
+     */
+    private int getGroupCount() {
+        attach(mRecyclerView.getConnector());
+        return mConnector != null ? mConnector.getGroupCount() : 0;
+    }
+
+    private void attach(ExpandableAdapter connector) {
+        if (connector == mConnector) {
+            return;
+        }
+
+        if (mConnector != null) {
+            mConnector.unregisterAdapterDataObserver(mDataObserver);
+        }
+        mSections = null;
+        mConnector = connector;
+        if (mConnector != null) {
+            mConnector.registerAdapterDataObserver(mDataObserver);
+        }
+    }
+}
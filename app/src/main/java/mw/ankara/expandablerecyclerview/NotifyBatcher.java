@@ -0,0 +1,200 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * Forwards structural changes to a {@link RecyclerView.Adapter}, or to any
+ * {@link RecyclerView.AdapterDataObserver} standing for one. Inside a batch, consecutive
+ * changes of the same kind which touch each other are merged into one ranged notification, so
+ * a bulk of single item changes costs a single animation pass.
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+final class NotifyBatcher {
+
+    private static final int TYPE_NONE = 0;
+    private static final int TYPE_INSERT = 1;
+    private static final int TYPE_REMOVE = 2;
+    private static final int TYPE_CHANGE = 3;
+
+    private final RecyclerView.AdapterDataObserver mTarget;
+
+    private int mBatchDepth;
+
+    private int mLastType = TYPE_NONE;
+    private int mLastStart;
+    private int mLastCount;
+    private Object mLastPayload;
+
+    NotifyBatcher(RecyclerView.Adapter adapter) {
+        this(new AdapterNotifier(adapter));
+    }
+
+    /**
+     * @param target receives the changes as the observers of an adapter would
+     */
+    NotifyBatcher(RecyclerView.AdapterDataObserver target) {
+        mTarget = target;
+    }
+
+    void beginBatch() {
+        ++mBatchDepth;
+    }
+
+    /**
+     * @return true if the outermost batch finished and the pending change has been dispatched
+     */
+    boolean endBatch() {
+        // an observer registered in the middle of a batch never saw it begin
+        if (mBatchDepth == 0) {
+            return false;
+        }
+
+        if (--mBatchDepth == 0) {
+            dispatchLast();
+            return true;
+        }
+        return false;
+    }
+
+    boolean isBatching() {
+        return mBatchDepth != 0;
+    }
+
+    void onInserted(int position, int count) {
+        if (count == 0) {
+            return;
+        }
+
+        if (mLastType == TYPE_INSERT && position >= mLastStart
+                && position <= mLastStart + mLastCount) {
+            mLastCount += count;
+        } else {
+            dispatchLast();
+            mLastType = TYPE_INSERT;
+            mLastStart = position;
+            mLastCount = count;
+        }
+        dispatchIfNotBatching();
+    }
+
+    void onRemoved(int position, int count) {
+        if (count == 0) {
+            return;
+        }
+
+        if (mLastType == TYPE_REMOVE && mLastStart >= position
+                && mLastStart <= position + count) {
+            mLastStart = position;
+            mLastCount += count;
+        } else {
+            dispatchLast();
+            mLastType = TYPE_REMOVE;
+            mLastStart = position;
+            mLastCount = count;
+        }
+        dispatchIfNotBatching();
+    }
+
+    void onChanged(int position, int count) {
+        onChanged(position, count, null);
+    }
+
+    /**
+     * changes only merge with changes of the same payload
+     */
+    void onChanged(int position, int count, Object payload) {
+        if (count == 0) {
+            return;
+        }
+
+        if (mLastType == TYPE_CHANGE && mLastPayload == payload
+                && position <= mLastStart + mLastCount
+                && position + count >= mLastStart) {
+            int end = Math.max(mLastStart + mLastCount, position + count);
+            mLastStart = Math.min(mLastStart, position);
+            mLastCount = end - mLastStart;
+        } else {
+            dispatchLast();
+            mLastType = TYPE_CHANGE;
+            mLastStart = position;
+            mLastCount = count;
+            mLastPayload = payload;
+        }
+        dispatchIfNotBatching();
+    }
+
+    void onMoved(int fromPosition, int toPosition) {
+        dispatchLast();
+        mTarget.onItemRangeMoved(fromPosition, toPosition, 1);
+    }
+
+    /**
+     * the whole data set changed, pending changes are covered by it
+     */
+    void onDataSetChanged() {
+        mLastType = TYPE_NONE;
+        mLastPayload = null;
+        mTarget.onChanged();
+    }
+
+    private void dispatchIfNotBatching() {
+        if (mBatchDepth == 0) {
+            dispatchLast();
+        }
+    }
+
+    private void dispatchLast() {
+        switch (mLastType) {
+            case TYPE_INSERT:
+                mTarget.onItemRangeInserted(mLastStart, mLastCount);
+                break;
+            case TYPE_REMOVE:
+                mTarget.onItemRangeRemoved(mLastStart, mLastCount);
+                break;
+            case TYPE_CHANGE:
+                mTarget.onItemRangeChanged(mLastStart, mLastCount, mLastPayload);
+                break;
+        }
+        mLastType = TYPE_NONE;
+        mLastPayload = null;
+    }
+
+    /**
+     * notifies the observers of an adapter
+     */
+    private static final class AdapterNotifier extends RecyclerView.AdapterDataObserver {
+
+        private final RecyclerView.Adapter mAdapter;
+
+        AdapterNotifier(RecyclerView.Adapter adapter) {
+            mAdapter = adapter;
+        }
+
+        @Override
+        public void onChanged() {
+            mAdapter.notifyDataSetChanged();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            mAdapter.notifyItemRangeChanged(positionStart, itemCount, payload);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mAdapter.notifyItemRangeInserted(positionStart, itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mAdapter.notifyItemRangeRemoved(positionStart, itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mAdapter.notifyItemMoved(fromPosition, toPosition);
+        }
+    }
+}
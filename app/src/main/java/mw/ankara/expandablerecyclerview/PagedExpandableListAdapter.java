@@ -0,0 +1,505 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.ViewGroup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An {@link ExpandableListAdapter} whose children are loaded page by page per group on a
+ * background executor. While the next page of a group loads, a placeholder row shows at the end
+ * of its children, and the loaded children replace it through a ranged insertion. Binding a
+ * child close to the end of the loaded ones loads the next page ahead.
+ * <p>
+ * <p>Groups start collapsed, the first page of a group loads when the group is expanded.</p>
+ * <p>
+ * <p>Only a bounded number of pages is kept, the least recently bound ones are evicted. Their
+ * rows stay in place and are bound as placeholders until the page is loaded again.</p>
+ * <p>
+ * <p>Pages are kept by group id, so groups can be inserted, removed or moved with the usual
+ * notifications.</p>
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+public abstract class PagedExpandableListAdapter<C, GVH extends RecyclerView.ViewHolder,
+        CVH extends RecyclerView.ViewHolder> extends ExpandableListAdapter<GVH, CVH> {
+
+    /**
+     * child view type of placeholder rows, the loaded children must use other types
+     */
+    public static final int VIEW_TYPE_PLACEHOLDER = Integer.MIN_VALUE;
+
+    private static final int DEFAULT_PREFETCH_DISTANCE = 10;
+
+    private static final int DEFAULT_MAX_LOADED_PAGES = 16;
+
+    private static ExecutorService sLoadExecutor;
+
+    private final int mPageSize;
+
+    private final Executor mLoadExecutor;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final HashMap<Long, GroupPages<C>> mGroupPages = new HashMap<>();
+
+    private int mPrefetchDistance = DEFAULT_PREFETCH_DISTANCE;
+
+    private int mMaxLoadedPages = DEFAULT_MAX_LOADED_PAGES;
+
+    private int mLoadedPageCount;
+
+    /**
+     * sentinel of the loaded pages of all groups, in a ring from the least recently bound one
+     * on. A loaded page comes in as the most recently bound one, its rows are about to be bound.
+     */
+    private final Page<C> mRecentPages = new Page<>(null, -1, null);
+
+    /**
+     * bumped by {@link #clearPages()} so pages loading for the cleared groups are dropped
+     */
+    private int mGeneration;
+
+    public PagedExpandableListAdapter(int pageSize) {
+        this(pageSize, getDefaultLoadExecutor());
+    }
+
+    /**
+     * @param loadExecutor executor {@link #onLoadChildPage} is called on
+     */
+    public PagedExpandableListAdapter(int pageSize, Executor loadExecutor) {
+        if (pageSize <= 0) {
+            throw new RuntimeException("Page size must be positive, got " + pageSize);
+        }
+        mPageSize = pageSize;
+        mLoadExecutor = loadExecutor;
+        mRecentPages.mPrevious = mRecentPages;
+        mRecentPages.mNext = mRecentPages;
+    }
+
+    private static synchronized ExecutorService getDefaultLoadExecutor() {
+        if (sLoadExecutor == null) {
+            sLoadExecutor = Executors.newSingleThreadExecutor();
+        }
+        return sLoadExecutor;
+    }
+
+    /**
+     * @param prefetchDistance load the next page when a child this close to the end of the
+     *                         loaded ones is bound
+     */
+    public void setPrefetchDistance(int prefetchDistance) {
+        mPrefetchDistance = prefetchDistance;
+    }
+
+    /**
+     * @param maxLoadedPages pages kept across all groups, should cover a screen of children
+     */
+    public void setMaxLoadedPages(int maxLoadedPages) {
+        mMaxLoadedPages = maxLoadedPages;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Drop all pages and reload them as groups are shown again.
+     */
+    public void clearPages() {
+        ++mGeneration;
+        mGroupPages.clear();
+        mLoadedPageCount = 0;
+        mRecentPages.mPrevious = mRecentPages;
+        mRecentPages.mNext = mRecentPages;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * @return the loaded child, null if it is shown as a placeholder
+     */
+    public C getChild(int groupPosition, int childPosition) {
+        GroupPages<C> pages = mGroupPages.get(getGroupId(groupPosition));
+        if (pages == null || childPosition >= pages.mCovered) {
+            return null;
+        }
+
+        Page<C> page = pages.mPages.get(childPosition / mPageSize);
+        return page != null ? page.mChildren.get(childPosition % mPageSize) : null;
+    }
+
+    /**
+     * Groups start collapsed, asking a group for its child count loads its first page, every
+     * group would load one right away otherwise.
+     */
+    @Override
+    public boolean isGroupExpandedByDefault(int groupPosition) {
+        return false;
+    }
+
+    /**
+     * Loaded children and a placeholder row if the next page is loading. The first page of a
+     * group starts loading the first time it is asked, when the group is expanded.
+     */
+    @Override
+    public final int getChildCount(int groupPosition) {
+        GroupPages<C> pages = obtainGroupPages(groupPosition);
+        if (pages.mCovered == 0 && !pages.mEndReached && !pages.mLoadingNext) {
+            // the placeholder is part of the count returned, no notification needed
+            pages.mLoadingNext = true;
+            loadPage(pages, 0, true);
+        }
+        return pages.mCovered + (pages.mLoadingNext ? 1 : 0);
+    }
+
+    @Override
+    public final int getChildItemViewType(int groupPosition, int childPosition) {
+        C child = getChild(groupPosition, childPosition);
+        return child != null ? getLoadedChildItemViewType(groupPosition, childPosition, child)
+                : VIEW_TYPE_PLACEHOLDER;
+    }
+
+    @Override
+    public final CVH onCreateChildViewHolder(ViewGroup parent, int viewType) {
+        return viewType == VIEW_TYPE_PLACEHOLDER ? onCreatePlaceholderViewHolder(parent)
+                : onCreateLoadedChildViewHolder(parent, viewType);
+    }
+
+    @Override
+    public final void onBindChildViewHolder(CVH holder, int groupPosition, int childPosition) {
+        GroupPages<C> pages = obtainGroupPages(groupPosition);
+        final int page = childPosition / mPageSize;
+
+        if (!pages.mEndReached && !pages.mLoadingNext
+                && childPosition >= pages.mCovered - mPrefetchDistance) {
+            postLoadNextPage(pages);
+        }
+
+        Page<C> loaded = childPosition < pages.mCovered ? pages.mPages.get(page) : null;
+        if (loaded != null) {
+            touchPage(loaded);
+            onBindLoadedChildViewHolder(holder, groupPosition, childPosition,
+                    loaded.mChildren.get(childPosition % mPageSize));
+        } else {
+            if (childPosition < pages.mCovered && pages.mLoadingPages.get(page) == 0) {
+                // evicted, load it again
+                loadPage(pages, page, false);
+            } else if (childPosition == pages.mCovered && pages.mNextFailed) {
+                // the row of the next page which failed to load
+                pages.mNextFailed = false;
+                loadPage(pages, page, true);
+            }
+            onBindPlaceholderViewHolder(holder, groupPosition, childPosition);
+        }
+    }
+
+    private GroupPages<C> obtainGroupPages(int groupPosition) {
+        long groupId = getGroupId(groupPosition);
+        GroupPages<C> pages = mGroupPages.get(groupId);
+        if (pages == null) {
+            pages = new GroupPages<>(groupId);
+            mGroupPages.put(groupId, pages);
+        }
+        pages.mLastPosition = groupPosition;
+        return pages;
+    }
+
+    /**
+     * @return current position of the group, -1 if it is gone
+     */
+    private int findGroupPosition(GroupPages<C> pages) {
+        int hint = pages.mLastPosition;
+        if (hint < getGroupCount() && getGroupId(hint) == pages.mGroupId) {
+            return hint;
+        }
+
+        for (int i = 0; i < getGroupCount(); ++i) {
+            if (getGroupId(i) == pages.mGroupId) {
+                pages.mLastPosition = i;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * show the placeholder and load the next page, posted as binding happens during a layout
+     */
+    private void postLoadNextPage(final GroupPages<C> pages) {
+        if (pages.mNextPosted) {
+            return;
+        }
+
+        pages.mNextPosted = true;
+        final int generation = mGeneration;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                pages.mNextPosted = false;
+                if (generation != mGeneration || pages.mEndReached || pages.mLoadingNext) {
+                    return;
+                }
+
+                int group = findGroupPosition(pages);
+                if (group == -1) {
+                    removeGroupPages(pages);
+                    return;
+                }
+
+                pages.mLoadingNext = true;
+                notifyChildRangeInserted(group, pages.mCovered, 1);
+                loadPage(pages, pages.mCovered / mPageSize, true);
+            }
+        });
+    }
+
+    private void loadPage(final GroupPages<C> pages, final int page, final boolean next) {
+        pages.mLoadingPages.put(page, 1);
+        final int generation = mGeneration;
+        mLoadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<C> children = onLoadChildPage(pages.mGroupId, page, mPageSize);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            onPageLoaded(pages, page, next, children);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @param children null if the page failed to load, it is tried again on the next bind of
+     *                 one of its rows. The placeholder row of a failed next page stays for it.
+     */
+    private void onPageLoaded(GroupPages<C> pages, int page, boolean next, List<C> children) {
+        pages.mLoadingPages.delete(page);
+
+        int group = findGroupPosition(pages);
+        if (group == -1) {
+            removeGroupPages(pages);
+            return;
+        }
+
+        if (children != null) {
+            Page<C> loaded = pages.mPages.get(page);
+            if (loaded != null) {
+                unlinkPage(loaded);
+            } else {
+                ++mLoadedPageCount;
+            }
+            loaded = new Page<>(pages, page, children);
+            pages.mPages.put(page, loaded);
+            touchPage(loaded);
+        }
+
+        if (next && children == null) {
+            pages.mNextFailed = true;
+        } else if (next) {
+            final int start = pages.mCovered;
+            final int count = children != null ? children.size() : 0;
+            pages.mLoadingNext = false;
+            pages.mCovered += count;
+            pages.mEndReached = count < mPageSize;
+
+            beginBatch();
+            notifyChildRangeRemoved(group, start, 1);
+            notifyChildRangeInserted(group, start, count);
+            endBatch();
+        } else if (children != null) {
+            notifyChildRangeChanged(group, page * mPageSize, children.size(), null);
+        }
+
+        evictPages();
+    }
+
+    /**
+     * drop the least recently bound pages beyond {@link #mMaxLoadedPages}, O(1) per page
+     */
+    private void evictPages() {
+        while (mLoadedPageCount > mMaxLoadedPages && mRecentPages.mNext != mRecentPages) {
+            Page<C> oldest = mRecentPages.mNext;
+            GroupPages<C> pages = oldest.mGroup;
+            unlinkPage(oldest);
+            pages.mPages.delete(oldest.mIndex);
+            --mLoadedPageCount;
+
+            // the rows turn back into placeholders, of another view type
+            int group = findGroupPosition(pages);
+            if (group != -1) {
+                notifyChildRangeChanged(group, oldest.mIndex * mPageSize,
+                        oldest.mChildren.size(), null);
+            } else {
+                removeGroupPages(pages);
+            }
+        }
+    }
+
+    /**
+     * move the page to the most recently bound end
+     */
+    private void touchPage(Page<C> page) {
+        unlinkPage(page);
+        page.mPrevious = mRecentPages.mPrevious;
+        page.mNext = mRecentPages;
+        mRecentPages.mPrevious.mNext = page;
+        mRecentPages.mPrevious = page;
+    }
+
+    private static <C> void unlinkPage(Page<C> page) {
+        if (page.mNext != null) {
+            page.mPrevious.mNext = page.mNext;
+            page.mNext.mPrevious = page.mPrevious;
+            page.mPrevious = null;
+            page.mNext = null;
+        }
+    }
+
+    /**
+     * forget a group which is gone, with its pages
+     */
+    private void removeGroupPages(GroupPages<C> pages) {
+        for (int i = 0; i < pages.mPages.size(); ++i) {
+            unlinkPage(pages.mPages.valueAt(i));
+        }
+        mLoadedPageCount -= pages.mPages.size();
+        pages.mPages.clear();
+        mGroupPages.remove(pages.mGroupId);
+    }
+
+    /**
+     * Load again the next pages which failed to load, by binding their placeholder rows again.
+     * Evicted pages which failed to load are loaded again as soon as they are bound.
+     */
+    public void retryFailedPages() {
+        beginBatch();
+        for (GroupPages<C> pages : mGroupPages.values()) {
+            if (pages.mNextFailed) {
+                int group = findGroupPosition(pages);
+                if (group != -1) {
+                    notifyChildChanged(group, pages.mCovered, null);
+                }
+            }
+        }
+        endBatch();
+    }
+
+    /**
+     * Gets a stable id of the group, its pages are kept under it. It is required here, whether
+     * or not the adapter {@link #hasStableIds()}.
+     *
+     * @param groupPosition the position of the group
+     * @return id of the group, unique in the adapter
+     */
+    @Override
+    public abstract long getGroupId(int groupPosition);
+
+    /**
+     * Load a page of children, called on the load executor.
+     *
+     * @param groupId  id of the group from {@link #getGroupId}
+     * @param page     index of the page, the children from <code>page * pageSize</code>
+     * @param pageSize number of children of a full page
+     * @return the children, fewer than <code>pageSize</code> for the last page, null if the
+     * page failed to load, see {@link #retryFailedPages()}
+     */
+    protected abstract List<C> onLoadChildPage(long groupId, int page, int pageSize);
+
+    /**
+     * Gets the view type of a loaded child.
+     *
+     * @return 0 by default, any int but {@link #VIEW_TYPE_PLACEHOLDER}
+     */
+    public int getLoadedChildItemViewType(int groupPosition, int childPosition, C child) {
+        return 0;
+    }
+
+    public abstract CVH onCreateLoadedChildViewHolder(ViewGroup parent, int viewType);
+
+    public abstract void onBindLoadedChildViewHolder(CVH holder, int groupPosition,
+            int childPosition, C child);
+
+    public abstract CVH onCreatePlaceholderViewHolder(ViewGroup parent);
+
+    /**
+     * @param childPosition the position of a child not loaded yet, or of the row showing the
+     *                      next page is loading
+     */
+    public abstract void onBindPlaceholderViewHolder(CVH holder, int groupPosition,
+            int childPosition);
+
+    /**
+     * pages of a group, touched on the main thread only
+     */
+    private static final class GroupPages<C> {
+
+        final long mGroupId;
+
+        /**
+         * loaded pages by index, evicted pages are missing
+         */
+        final SparseArray<Page<C>> mPages = new SparseArray<>();
+
+        final SparseIntArray mLoadingPages = new SparseIntArray();
+
+        /**
+         * children covered by the pages loaded so far, evicted ones included
+         */
+        int mCovered;
+
+        boolean mEndReached;
+
+        /**
+         * the next page is loading and a placeholder row is shown for it
+         */
+        boolean mLoadingNext;
+
+        boolean mNextPosted;
+
+        /**
+         * the next page failed to load, its placeholder row stays and loads it again when bound
+         */
+        boolean mNextFailed;
+
+        int mLastPosition;
+
+        GroupPages(long groupId) {
+            mGroupId = groupId;
+        }
+    }
+
+    /**
+     * a loaded page, linked in the order its rows were bound in
+     */
+    private static final class Page<C> {
+
+        final GroupPages<C> mGroup;
+
+        final int mIndex;
+
+        final List<C> mChildren;
+
+        Page<C> mPrevious;
+
+        Page<C> mNext;
+
+        Page(GroupPages<C> group, int index, List<C> children) {
+            mGroup = group;
+            mIndex = index;
+            mChildren = children;
+        }
+    }
+}
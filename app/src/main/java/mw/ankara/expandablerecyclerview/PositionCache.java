@@ -0,0 +1,116 @@
+package mw.ankara.expandablerecyclerview;
+
+/**
+ * A small ring of recently looked up {@link PositionInfo}s. RecyclerView asks for the same
+ * position from getItemViewType, onCreateViewHolder and onBindViewHolder, with prefetch of
+ * other positions in between, so a single cached position keeps missing.
+ * <p>
+ * <p>Structural changes patch the entries in place instead of dropping the whole cache.</p>
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+final class PositionCache {
+
+    private static final int CAPACITY = 8;
+
+    private final PositionInfo[] mEntries = new PositionInfo[CAPACITY];
+
+    /**
+     * next slot to be overwritten
+     */
+    private int mNext;
+
+    /**
+     * the entry hit or filled most recently
+     */
+    private PositionInfo mLast;
+
+    PositionCache() {
+        for (int i = 0; i < CAPACITY; ++i) {
+            mEntries[i] = new PositionInfo();
+        }
+        mLast = mEntries[0];
+    }
+
+    /**
+     * @return the cached entry of <code>position</code>, null if missed
+     */
+    PositionInfo get(int position) {
+        if (mLast.position == position) {
+            return mLast;
+        }
+
+        for (PositionInfo entry : mEntries) {
+            if (entry.position == position) {
+                mLast = entry;
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the entry hit or filled most recently, may point to no position
+     */
+    PositionInfo getLast() {
+        return mLast;
+    }
+
+    /**
+     * @return the least recently filled entry, to be filled by the caller
+     */
+    PositionInfo obtain() {
+        PositionInfo entry = mEntries[mNext];
+        mNext = (mNext + 1) % CAPACITY;
+        mLast = entry;
+        return entry;
+    }
+
+    void clear() {
+        for (PositionInfo entry : mEntries) {
+            entry.reset();
+        }
+    }
+
+    /**
+     * drop entries of the <code>count</code> positions from <code>positionStart</code>
+     */
+    void invalidate(int positionStart, int count) {
+        for (PositionInfo entry : mEntries) {
+            if (entry.position >= positionStart && entry.position < positionStart + count) {
+                entry.reset();
+            }
+        }
+    }
+
+    /**
+     * children were inserted into or removed from <code>group</code>, move entries at and after
+     * <code>fromPosition</code> by <code>delta</code>
+     */
+    void shiftChildren(int fromPosition, int delta, int group) {
+        for (PositionInfo entry : mEntries) {
+            if (entry.position >= fromPosition) {
+                entry.position += delta;
+                if (entry.type == PositionInfo.PACKED_POSITION_TYPE_CHILD && entry.group == group) {
+                    entry.child += delta;
+                }
+            }
+        }
+    }
+
+    /**
+     * groups were inserted or removed, move entries at and after <code>fromPosition</code> by
+     * <code>delta</code> and their groups by <code>groupDelta</code>
+     */
+    void shiftGroups(int fromPosition, int delta, int groupDelta) {
+        for (PositionInfo entry : mEntries) {
+            if (entry.position >= fromPosition) {
+                entry.position += delta;
+                if (entry.group != -1) {
+                    entry.group += groupDelta;
+                }
+            }
+        }
+    }
+}
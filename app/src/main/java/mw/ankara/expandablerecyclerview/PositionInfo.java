@@ -33,10 +33,51 @@ public class PositionInfo {
     @PositionType
     int type;
 
+    public PositionInfo() {
+        reset();
+    }
+
     public PositionInfo(int group, int child, int position, @PositionType int type) {
+        set(group, child, position, type);
+    }
+
+    void set(int group, int child, int position, @PositionType int type) {
         this.group = group;
         this.child = child;
         this.position = position;
         this.type = type;
     }
+
+    /**
+     * mark as pointing to no position
+     */
+    void reset() {
+        set(-1, -1, -1, PACKED_POSITION_TYPE_GROUP);
+    }
+
+    /**
+     * @return group position, -1 for headers and footers
+     */
+    public int getGroup() {
+        return group;
+    }
+
+    /**
+     * @return child position in the group, -1 for groups, index in headers or footers for them
+     */
+    public int getChild() {
+        return child;
+    }
+
+    /**
+     * @return position in adapter
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    @PositionType
+    public int getType() {
+        return type;
+    }
 }
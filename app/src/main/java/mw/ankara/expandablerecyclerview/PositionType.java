@@ -12,7 +12,7 @@ import java.lang.annotation.Target;
  * @since 11/17/15
  */
 @Retention(RetentionPolicy.SOURCE)
-@Target({ElementType.PARAMETER, ElementType.FIELD})
+@Target({ElementType.PARAMETER, ElementType.FIELD, ElementType.METHOD})
 @IntDef({PositionInfo.PACKED_POSITION_TYPE_CHILD, PositionInfo.PACKED_POSITION_TYPE_GROUP,
         PositionInfo.PACKED_POSITION_TYPE_HEADER, PositionInfo.PACKED_POSITION_TYPE_FOOTER})
 @interface PositionType {
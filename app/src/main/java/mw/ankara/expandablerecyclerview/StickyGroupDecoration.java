@@ -0,0 +1,210 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.graphics.Canvas;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.ViewHolder;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Draws the group of the first visible item pinned to the top of an
+ * {@link ExpandableRecyclerView}, pushed up by the next group when it reaches the pinned one.
+ * <p>
+ * <p>The pinned group is found with one lookup in the group index per frame, O(log G). One holder
+ * is kept per group view type, created and bound outside of RecyclerView, and it is only bound
+ * again when another group gets pinned or the adapter data changes. The pinned view is drawn
+ * only, taps go to the item below it.</p>
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+public class StickyGroupDecoration extends RecyclerView.ItemDecoration {
+
+    private static final int NO_GROUP = -1;
+
+    /**
+     * pinned holders by user group view type
+     */
+    private final SparseArray<ViewHolder> mHolders = new SparseArray<>();
+
+    /**
+     * group bound to the pinned holder by user group view type
+     */
+    private final SparseIntArray mBoundGroups = new SparseIntArray();
+
+    private final PositionInfo mPositionInfo = new PositionInfo();
+
+    private final RecyclerView.AdapterDataObserver mDataObserver =
+            new RecyclerView.AdapterDataObserver() {
+                @Override
+                public void onChanged() {
+                    // the adapter may have been swapped, its group types may differ
+                    mHolders.clear();
+                    mBoundGroups.clear();
+                }
+
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount) {
+                    unbindChangedGroups(positionStart, itemCount);
+                }
+
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+                    unbindChangedGroups(positionStart, itemCount);
+                }
+
+                // structural changes shift the groups, all of them are bound again
+
+                @Override
+                public void onItemRangeInserted(int positionStart, int itemCount) {
+                    mBoundGroups.clear();
+                }
+
+                @Override
+                public void onItemRangeRemoved(int positionStart, int itemCount) {
+                    mBoundGroups.clear();
+                }
+
+                @Override
+                public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                    mBoundGroups.clear();
+                }
+            };
+
+    private ExpandableAdapter mConnector;
+
+    /**
+     * width the pinned views were measured with
+     */
+    private int mMeasuredWidth;
+
+    @Override
+    public void onDrawOver(Canvas c, RecyclerView parent, RecyclerView.State state) {
+        if (!(parent instanceof ExpandableRecyclerView)) {
+            throw new RuntimeException(
+                    "StickyGroupDecoration can only decorate an ExpandableRecyclerView");
+        }
+
+        attach(((ExpandableRecyclerView) parent).getConnector());
+        if (mConnector == null || parent.getChildCount() == 0) {
+            return;
+        }
+
+        final View first = parent.getChildAt(0);
+        final int position = parent.getChildAdapterPosition(first);
+        if (position == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        final PositionInfo info = mConnector.getUnflattenedPos(position, mPositionInfo);
+        final int top = parent.getPaddingTop();
+        if (info.type != PositionInfo.PACKED_POSITION_TYPE_GROUP
+                && info.type != PositionInfo.PACKED_POSITION_TYPE_CHILD
+                || info.type == PositionInfo.PACKED_POSITION_TYPE_GROUP
+                && (first.getTop() >= top || !mConnector.isGroupExpanded(info.group))) {
+            // a header or footer, a group shown whole at the top, or one without children
+            return;
+        }
+
+        final int group = info.group;
+        final View pinned = getPinnedView(parent, group);
+
+        // push the pinned view up by the next group
+        int offset = top;
+        if (group + 1 < mConnector.getGroupCount()) {
+            View next = parent.getLayoutManager()
+                    .findViewByPosition(mConnector.getGroupPosition(group + 1));
+            if (next != null && next.getTop() < top + pinned.getHeight()) {
+                offset = next.getTop() - pinned.getHeight();
+            }
+        }
+
+        final int saveCount = c.save();
+        c.clipRect(parent.getPaddingLeft(), top, parent.getWidth() - parent.getPaddingRight(),
+                parent.getHeight() - parent.getPaddingBottom());
+        c.translate(parent.getPaddingLeft(), offset);
+        pinned.draw(c);
+        c.restoreToCount(saveCount);
+    }
+
+    /**
+     * @return the view of the holder of the group's type, bound and laid out for the group
+     */
+    private View getPinnedView(RecyclerView parent, int group) {
+        final int width = parent.getWidth() - parent.getPaddingLeft() - parent.getPaddingRight();
+        if (width != mMeasuredWidth) {
+            mMeasuredWidth = width;
+            mBoundGroups.clear();
+        }
+
+        final int groupType = mConnector.getGroupItemViewType(group);
+        ViewHolder holder = mHolders.get(groupType);
+        if (holder == null) {
+            holder = mConnector.createGroupViewHolder(parent, groupType);
+            mHolders.put(groupType, holder);
+        }
+
+        if (mBoundGroups.get(groupType, NO_GROUP) != group) {
+            mConnector.bindGroupViewHolder(holder, group);
+            mBoundGroups.put(groupType, group);
+            layout(holder.itemView, width);
+        }
+        return holder.itemView;
+    }
+
+    private static void layout(View view, int width) {
+        ViewGroup.LayoutParams lp = view.getLayoutParams();
+        int widthSpec = ViewGroup.getChildMeasureSpec(
+                View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY), 0,
+                lp != null ? lp.width : ViewGroup.LayoutParams.MATCH_PARENT);
+        int heightSpec = ViewGroup.getChildMeasureSpec(
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED), 0,
+                lp != null ? lp.height : ViewGroup.LayoutParams.WRAP_CONTENT);
+        view.measure(widthSpec, heightSpec);
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    /**
+     * forget the pinned groups whose rows changed, changed children keep the pinned group bound
+     */
+    private void unbindChangedGroups(int positionStart, int itemCount) {
+        for (int i = mBoundGroups.size() - 1; i >= 0; --i) {
+            int group = mBoundGroups.valueAt(i);
+            int position = group < mConnector.getGroupCount()
+                    ? mConnector.getGroupPosition(group) : RecyclerView.NO_POSITION;
+            if (position == RecyclerView.NO_POSITION || position >= positionStart
+                    && position < positionStart + itemCount) {
+                mBoundGroups.delete(mBoundGroups.keyAt(i));
+            }
+        }
+    }
+
+    /**
+     * Stop observing the adapter, call it when the decoration is removed from its list.
+     * {@link ExpandableRecyclerView#setStickyGroupsEnabled} does it for its own decoration.
+     */
+    public void detach() {
+        attach(null);
+    }
+
+    /**
+     * follow the adapter of the list, the holders of another adapter are dropped
+     */
+    private void attach(ExpandableAdapter connector) {
+        if (connector == mConnector) {
+            return;
+        }
+
+        if (mConnector != null) {
+            mConnector.unregisterAdapterDataObserver(mDataObserver);
+        }
+        mHolders.clear();
+        mBoundGroups.clear();
+        mConnector = connector;
+        if (mConnector != null) {
+            mConnector.registerAdapterDataObserver(mDataObserver);
+        }
+    }
+}
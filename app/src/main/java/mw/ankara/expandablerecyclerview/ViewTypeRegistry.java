@@ -0,0 +1,88 @@
+package mw.ankara.expandablerecyclerview;
+
+import java.util.Arrays;
+
+/**
+ * Maps the view types of groups, children and fixed items to dense ids, so that any int is a
+ * valid user view type and RecyclerView sees small contiguous types. Ids are handed out on first
+ * use and never change, decoding an id back is a plain array read.
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+final class ViewTypeRegistry {
+
+    static final int KIND_GROUP = 0;
+    static final int KIND_CHILD = 1;
+    static final int KIND_FIXED = 2;
+
+    /**
+     * headers and footers added as ViewHolders, keyed by their serial
+     */
+    static final int KIND_HOLDER = 3;
+
+    private static final int MIN_CAPACITY = 8;
+
+    /**
+     * kind and user view type packed by {@link #getKey}, sorted, with the id of each key at the
+     * same index of {@link #mKeyIds}
+     */
+    private long[] mKeys = new long[MIN_CAPACITY];
+
+    private int[] mKeyIds = new int[MIN_CAPACITY];
+
+    private int[] mKinds = new int[MIN_CAPACITY];
+
+    private int[] mUserTypes = new int[MIN_CAPACITY];
+
+    private int mIdCount;
+
+    /**
+     * @return the id of the view type, registered on first use
+     */
+    int getId(int kind, int userType) {
+        final long key = getKey(kind, userType);
+        int index = Arrays.binarySearch(mKeys, 0, mIdCount, key);
+        if (index >= 0) {
+            return mKeyIds[index];
+        }
+
+        int id = mIdCount++;
+        if (id == mKinds.length) {
+            mKeys = Arrays.copyOf(mKeys, id * 2);
+            mKeyIds = Arrays.copyOf(mKeyIds, id * 2);
+            mKinds = Arrays.copyOf(mKinds, id * 2);
+            mUserTypes = Arrays.copyOf(mUserTypes, id * 2);
+        }
+        index = -index - 1;
+        System.arraycopy(mKeys, index, mKeys, index + 1, id - index);
+        System.arraycopy(mKeyIds, index, mKeyIds, index + 1, id - index);
+        mKeys[index] = key;
+        mKeyIds[index] = id;
+        mKinds[id] = kind;
+        mUserTypes[id] = userType;
+        return id;
+    }
+
+    private static long getKey(int kind, int userType) {
+        return (long) kind << 32 | userType & 0xffffffffL;
+    }
+
+    /**
+     * @return one of the KIND constants
+     */
+    int getKind(int id) {
+        return mKinds[id];
+    }
+
+    int getUserType(int id) {
+        return mUserTypes[id];
+    }
+
+    /**
+     * @return number of ids handed out, ids are 0 to this count - 1
+     */
+    int getIdCount() {
+        return mIdCount;
+    }
+}
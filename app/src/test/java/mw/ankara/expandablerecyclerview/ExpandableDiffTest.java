@@ -0,0 +1,357 @@
+package mw.ankara.expandablerecyclerview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author masa
+ * @since 10/17/26
+ */
+public class ExpandableDiffTest {
+
+    /**
+     * an item of a snapshot, a group has children
+     */
+    private static class Item {
+
+        final long mId;
+
+        final int mContent;
+
+        final List<Item> mChildren = new ArrayList<>();
+
+        Item(long id, int content) {
+            mId = id;
+            mContent = content;
+        }
+
+        Item copy() {
+            Item copy = new Item(mId, mContent);
+            for (Item child : mChildren) {
+                copy.mChildren.add(child.copy());
+            }
+            return copy;
+        }
+    }
+
+    private static class SnapshotCallback extends ExpandableDiff.Callback {
+
+        private final List<Item> mOld;
+
+        private final List<Item> mNew;
+
+        SnapshotCallback(List<Item> oldList, List<Item> newList) {
+            mOld = oldList;
+            mNew = newList;
+        }
+
+        @Override
+        public int getOldGroupCount() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewGroupCount() {
+            return mNew.size();
+        }
+
+        @Override
+        public int getOldChildCount(int oldGroup) {
+            return mOld.get(oldGroup).mChildren.size();
+        }
+
+        @Override
+        public int getNewChildCount(int newGroup) {
+            return mNew.get(newGroup).mChildren.size();
+        }
+
+        @Override
+        public long getOldGroupId(int oldGroup) {
+            return mOld.get(oldGroup).mId;
+        }
+
+        @Override
+        public long getNewGroupId(int newGroup) {
+            return mNew.get(newGroup).mId;
+        }
+
+        @Override
+        public long getOldChildId(int oldGroup, int oldChild) {
+            return mOld.get(oldGroup).mChildren.get(oldChild).mId;
+        }
+
+        @Override
+        public long getNewChildId(int newGroup, int newChild) {
+            return mNew.get(newGroup).mChildren.get(newChild).mId;
+        }
+
+        @Override
+        public boolean areGroupContentsTheSame(int oldGroup, int newGroup) {
+            return mOld.get(oldGroup).mContent == mNew.get(newGroup).mContent;
+        }
+
+        @Override
+        public boolean areChildContentsTheSame(int oldGroup, int oldChild, int newGroup,
+                int newChild) {
+            return mOld.get(oldGroup).mChildren.get(oldChild).mContent
+                    == mNew.get(newGroup).mChildren.get(newChild).mContent;
+        }
+
+        @Override
+        public Object getGroupChangePayload(int oldGroup, int newGroup) {
+            return mNew.get(newGroup).mContent;
+        }
+
+        @Override
+        public Object getChildChangePayload(int oldGroup, int oldChild, int newGroup,
+                int newChild) {
+            return mNew.get(newGroup).mChildren.get(newChild).mContent;
+        }
+    }
+
+    /**
+     * applies the operations to a copy of the old snapshot, changes take their content from
+     * the payload and insertions copy the items of the new snapshot
+     */
+    private static class ApplyingCallback implements ExpandableDiff.UpdateCallback {
+
+        final List<Item> mList = new ArrayList<>();
+
+        final List<Item> mNew;
+
+        int mMoveCount;
+
+        int mChangeCount;
+
+        ApplyingCallback(List<Item> oldList, List<Item> newList) {
+            for (Item group : oldList) {
+                mList.add(group.copy());
+            }
+            mNew = newList;
+        }
+
+        @Override
+        public void onGroupsRemoved(int groupStart, int groupCount) {
+            assertTrue(groupStart >= 0 && groupStart + groupCount <= mList.size());
+            mList.subList(groupStart, groupStart + groupCount).clear();
+        }
+
+        @Override
+        public void onGroupMoved(int fromGroup, int toGroup) {
+            ++mMoveCount;
+            mList.add(toGroup, mList.remove(fromGroup));
+        }
+
+        @Override
+        public void onGroupsInserted(int groupStart, int groupCount) {
+            for (int i = groupStart; i < groupStart + groupCount; ++i) {
+                mList.add(i, mNew.get(i).copy());
+            }
+        }
+
+        @Override
+        public void onGroupChanged(int group, Object payload) {
+            ++mChangeCount;
+            Item old = mList.get(group);
+            Item changed = new Item(old.mId, (Integer) payload);
+            changed.mChildren.addAll(old.mChildren);
+            mList.set(group, changed);
+        }
+
+        @Override
+        public void onChildrenRemoved(int group, int childStart, int childCount) {
+            List<Item> children = mList.get(group).mChildren;
+            assertTrue(childStart >= 0 && childStart + childCount <= children.size());
+            children.subList(childStart, childStart + childCount).clear();
+        }
+
+        @Override
+        public void onChildMoved(int group, int fromChild, int toChild) {
+            ++mMoveCount;
+            List<Item> children = mList.get(group).mChildren;
+            children.add(toChild, children.remove(fromChild));
+        }
+
+        @Override
+        public void onChildrenInserted(int group, int childStart, int childCount) {
+            List<Item> children = mList.get(group).mChildren;
+            for (int i = childStart; i < childStart + childCount; ++i) {
+                children.add(i, mNew.get(group).mChildren.get(i).copy());
+            }
+        }
+
+        @Override
+        public void onChildChanged(int group, int child, Object payload) {
+            ++mChangeCount;
+            List<Item> children = mList.get(group).mChildren;
+            children.set(child, new Item(children.get(child).mId, (Integer) payload));
+        }
+    }
+
+    private static ApplyingCallback apply(List<Item> oldList, List<Item> newList) {
+        ExpandableDiff.Result result =
+                ExpandableDiff.calculate(new SnapshotCallback(oldList, newList));
+        ApplyingCallback callback = new ApplyingCallback(oldList, newList);
+        result.dispatchUpdatesTo(callback);
+        assertSame(newList, callback.mList);
+        return callback;
+    }
+
+    private static void assertSame(List<Item> expected, List<Item> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            Item expectedItem = expected.get(i);
+            Item actualItem = actual.get(i);
+            assertEquals(expectedItem.mId, actualItem.mId);
+            assertEquals(expectedItem.mContent, actualItem.mContent);
+            assertSame(expectedItem.mChildren, actualItem.mChildren);
+        }
+    }
+
+    /**
+     * @param groups group ids, with the child ids after a colon, e.g. "1:1,2"
+     */
+    private static List<Item> snapshot(String... groups) {
+        List<Item> list = new ArrayList<>();
+        for (String group : groups) {
+            String[] parts = group.split(":");
+            Item item = new Item(Long.parseLong(parts[0]), 0);
+            if (parts.length > 1) {
+                for (String child : parts[1].split(",")) {
+                    item.mChildren.add(new Item(Long.parseLong(child), 0));
+                }
+            }
+            list.add(item);
+        }
+        return list;
+    }
+
+    @Test
+    public void sameSnapshotsGiveNoOperations() {
+        ExpandableDiff.Result result = ExpandableDiff.calculate(
+                new SnapshotCallback(snapshot("1:1,2", "2"), snapshot("1:1,2", "2")));
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void emptySnapshots() {
+        assertTrue(ExpandableDiff.calculate(new SnapshotCallback(snapshot(), snapshot()))
+                .isEmpty());
+        apply(snapshot(), snapshot("1:1", "2"));
+        apply(snapshot("1:1", "2"), snapshot());
+    }
+
+    @Test
+    public void reversedGroupsAreAllMovedButOne() {
+        ApplyingCallback callback = apply(snapshot("1", "2", "3", "4", "5"),
+                snapshot("5", "4", "3", "2", "1"));
+        assertEquals(4, callback.mMoveCount);
+    }
+
+    @Test
+    public void reversedChildrenAreAllMovedButOne() {
+        ApplyingCallback callback = apply(snapshot("1:1,2,3,4"), snapshot("1:4,3,2,1"));
+        assertEquals(3, callback.mMoveCount);
+    }
+
+    /**
+     * moves are found in O(n log n), a quadratic search would take minutes here
+     */
+    @Test(timeout = 10000)
+    public void longReversalIsMovedQuickly() {
+        List<Item> oldList = new ArrayList<>();
+        List<Item> newList = new ArrayList<>();
+        for (int i = 0; i < 200000; ++i) {
+            oldList.add(new Item(i, 0));
+            newList.add(0, new Item(i, 0));
+        }
+        final int[] moves = new int[1];
+        ExpandableDiff.calculate(new SnapshotCallback(oldList, newList))
+                .dispatchUpdatesTo(new ApplyingCallback(oldList, newList) {
+                    @Override
+                    public void onGroupMoved(int fromGroup, int toGroup) {
+                        ++moves[0];
+                    }
+                });
+        assertEquals(199999, moves[0]);
+    }
+
+    @Test
+    public void duplicatedIdsMatchOnce() {
+        apply(snapshot("1:7,7", "1", "2"), snapshot("1:7", "2", "1", "1:7,7,7"));
+    }
+
+    @Test
+    public void changesCarryTheirPayloads() {
+        List<Item> oldList = snapshot("1:1,2", "2:1");
+        List<Item> newList = snapshot("2:1", "1:2,1");
+        newList.set(0, new Item(2, 5));
+        newList.get(0).mChildren.add(new Item(1, 6));
+        newList.get(1).mChildren.set(1, new Item(1, 9));
+
+        ApplyingCallback callback = apply(oldList, newList);
+        assertEquals(3, callback.mChangeCount);
+    }
+
+    /**
+     * random snapshots drawn from small id ranges, so groups and children are kept, moved,
+     * duplicated, removed and inserted
+     */
+    @Test
+    public void appliedOperationsGiveTheNewSnapshot() {
+        Random random = new Random(11);
+        for (int round = 0; round < 2000; ++round) {
+            List<Item> oldList = randomSnapshot(random);
+            List<Item> newList = randomSnapshot(random);
+
+            // a duplicated id only pairs its first old and new occurrences
+            int changes = 0;
+            for (Item newGroup : newList) {
+                Item oldGroup = findFirst(oldList, newGroup.mId);
+                if (oldGroup != null && findFirst(newList, newGroup.mId) == newGroup) {
+                    changes += oldGroup.mContent != newGroup.mContent ? 1 : 0;
+                    for (Item newChild : newGroup.mChildren) {
+                        Item oldChild = findFirst(oldGroup.mChildren, newChild.mId);
+                        if (oldChild != null
+                                && findFirst(newGroup.mChildren, newChild.mId) == newChild
+                                && oldChild.mContent != newChild.mContent) {
+                            ++changes;
+                        }
+                    }
+                }
+            }
+
+            ApplyingCallback callback = apply(oldList, newList);
+            assertEquals(changes, callback.mChangeCount);
+        }
+    }
+
+    private static Item findFirst(List<Item> items, long id) {
+        for (Item item : items) {
+            if (item.mId == id) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    private static List<Item> randomSnapshot(Random random) {
+        List<Item> list = new ArrayList<>();
+        int groupCount = random.nextInt(8);
+        for (int i = 0; i < groupCount; ++i) {
+            Item group = new Item(random.nextInt(10), random.nextInt(2));
+            int childCount = random.nextInt(6);
+            for (int j = 0; j < childCount; ++j) {
+                group.mChildren.add(new Item(random.nextInt(8), random.nextInt(2)));
+            }
+            list.add(group);
+        }
+        return list;
+    }
+}
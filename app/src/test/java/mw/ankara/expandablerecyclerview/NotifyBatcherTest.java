@@ -0,0 +1,138 @@
+package mw.ankara.expandablerecyclerview;
+
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author masa
+ * @since 10/17/26
+ */
+public class NotifyBatcherTest {
+
+    private final List<String> mNotifications = new ArrayList<>();
+
+    private final NotifyBatcher mBatcher = new NotifyBatcher(
+            new RecyclerView.AdapterDataObserver() {
+                @Override
+                public void onChanged() {
+                    mNotifications.add("all");
+                }
+
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount,
+                        Object payload) {
+                    mNotifications.add("change " + positionStart + " " + itemCount + " "
+                            + payload);
+                }
+
+                @Override
+                public void onItemRangeInserted(int positionStart, int itemCount) {
+                    mNotifications.add("insert " + positionStart + " " + itemCount);
+                }
+
+                @Override
+                public void onItemRangeRemoved(int positionStart, int itemCount) {
+                    mNotifications.add("remove " + positionStart + " " + itemCount);
+                }
+
+                @Override
+                public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                    mNotifications.add("move " + fromPosition + " " + toPosition);
+                }
+            });
+
+    private void assertNotifications(String... expected) {
+        assertEquals(Arrays.asList(expected), mNotifications);
+        mNotifications.clear();
+    }
+
+    @Test
+    public void dispatchesRightAwayOutsideBatches() {
+        mBatcher.onInserted(1, 1);
+        mBatcher.onInserted(2, 1);
+        assertNotifications("insert 1 1", "insert 2 1");
+        assertFalse(mBatcher.endBatch());
+    }
+
+    @Test
+    public void touchingInsertionsMerge() {
+        mBatcher.beginBatch();
+        mBatcher.onInserted(5, 1);
+        mBatcher.onInserted(6, 2);
+        // inside the inserted range
+        mBatcher.onInserted(5, 1);
+        mBatcher.onInserted(0, 0);
+        assertNotifications();
+        assertTrue(mBatcher.endBatch());
+        assertNotifications("insert 5 4");
+    }
+
+    @Test
+    public void touchingRemovalsMerge() {
+        mBatcher.beginBatch();
+        mBatcher.onRemoved(5, 1);
+        mBatcher.onRemoved(5, 2);
+        mBatcher.onRemoved(4, 1);
+        // not touching, dispatches the merged one
+        mBatcher.onRemoved(9, 1);
+        mBatcher.endBatch();
+        assertNotifications("remove 4 4", "remove 9 1");
+    }
+
+    @Test
+    public void changesMergeOnlyWithTheSamePayload() {
+        Object payload = "p";
+        mBatcher.beginBatch();
+        mBatcher.onChanged(3, 2);
+        mBatcher.onChanged(1, 2);
+        mBatcher.onChanged(4, 3);
+        mBatcher.onChanged(7, 1, payload);
+        mBatcher.onChanged(8, 1, payload);
+        mBatcher.onChanged(9, 1);
+        mBatcher.endBatch();
+        assertNotifications("change 1 6 null", "change 7 2 p", "change 9 1 null");
+    }
+
+    @Test
+    public void kindsAndMovesBreakTheMerge() {
+        mBatcher.beginBatch();
+        mBatcher.onInserted(1, 1);
+        mBatcher.onRemoved(1, 1);
+        mBatcher.onInserted(1, 1);
+        mBatcher.onMoved(0, 3);
+        mBatcher.onInserted(2, 1);
+        mBatcher.endBatch();
+        assertNotifications("insert 1 1", "remove 1 1", "insert 1 1", "move 0 3", "insert 2 1");
+    }
+
+    @Test
+    public void nestedBatchesDispatchAtTheOutermostEnd() {
+        mBatcher.beginBatch();
+        mBatcher.beginBatch();
+        mBatcher.onInserted(0, 1);
+        assertFalse(mBatcher.endBatch());
+        mBatcher.onInserted(1, 1);
+        assertTrue(mBatcher.isBatching());
+        assertNotifications();
+        assertTrue(mBatcher.endBatch());
+        assertNotifications("insert 0 2");
+    }
+
+    @Test
+    public void dataSetChangeCoversThePendingChange() {
+        mBatcher.beginBatch();
+        mBatcher.onInserted(0, 1);
+        mBatcher.onDataSetChanged();
+        mBatcher.endBatch();
+        assertNotifications("all");
+    }
+}
@@ -0,0 +1,124 @@
+package mw.ankara.expandablerecyclerview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author masa
+ * @since 10/17/26
+ */
+public class PositionCacheTest {
+
+    private static PositionInfo fill(PositionCache cache, int group, int child, int position) {
+        PositionInfo entry = cache.obtain();
+        entry.set(group, child, position, child == -1 ? PositionInfo.PACKED_POSITION_TYPE_GROUP
+                : PositionInfo.PACKED_POSITION_TYPE_CHILD);
+        return entry;
+    }
+
+    private static void assertEntry(PositionCache cache, int position, int group, int child) {
+        PositionInfo entry = cache.get(position);
+        assertEquals(group, entry.group);
+        assertEquals(child, entry.child);
+        assertEquals(position, entry.position);
+    }
+
+    @Test
+    public void hitsTheFilledEntries() {
+        PositionCache cache = new PositionCache();
+        PositionInfo group = fill(cache, 0, -1, 0);
+        PositionInfo child = fill(cache, 0, 0, 1);
+
+        assertSame(group, cache.get(0));
+        assertSame(group, cache.getLast());
+        assertSame(child, cache.get(1));
+        assertNull(cache.get(2));
+    }
+
+    @Test
+    public void oldestEntryIsOverwritten() {
+        PositionCache cache = new PositionCache();
+        for (int i = 0; i < 9; ++i) {
+            fill(cache, i, -1, i);
+        }
+        assertNull(cache.get(0));
+        for (int i = 1; i < 9; ++i) {
+            assertEntry(cache, i, i, -1);
+        }
+    }
+
+    @Test
+    public void invalidateDropsOnlyTheRange() {
+        PositionCache cache = new PositionCache();
+        for (int i = 0; i < 6; ++i) {
+            fill(cache, i, -1, i);
+        }
+        cache.invalidate(2, 3);
+
+        assertEntry(cache, 1, 1, -1);
+        assertNull(cache.get(2));
+        assertNull(cache.get(3));
+        assertNull(cache.get(4));
+        assertEntry(cache, 5, 5, -1);
+
+        cache.clear();
+        for (int i = 0; i < 6; ++i) {
+            assertNull(cache.get(i));
+        }
+    }
+
+    /**
+     * group 0 at 0 with children at 1 and 2, group 1 at 3 with a child at 4, then two children
+     * are inserted in group 0 before its second child
+     */
+    @Test
+    public void shiftChildrenMovesLaterEntries() {
+        PositionCache cache = new PositionCache();
+        fill(cache, 0, -1, 0);
+        fill(cache, 0, 0, 1);
+        fill(cache, 0, 1, 2);
+        fill(cache, 1, -1, 3);
+        fill(cache, 1, 0, 4);
+
+        cache.shiftChildren(2, 2, 0);
+        assertEntry(cache, 0, 0, -1);
+        assertEntry(cache, 1, 0, 0);
+        assertEntry(cache, 4, 0, 3);
+        assertEntry(cache, 5, 1, -1);
+        assertEntry(cache, 6, 1, 0);
+
+        // and removed again, the removed range is invalidated first
+        cache.invalidate(2, 2);
+        cache.shiftChildren(4, -2, 0);
+        assertEntry(cache, 2, 0, 1);
+        assertEntry(cache, 3, 1, -1);
+        assertEntry(cache, 4, 1, 0);
+        assertNull(cache.get(5));
+    }
+
+    @Test
+    public void shiftGroupsMovesLaterGroups() {
+        PositionCache cache = new PositionCache();
+        fill(cache, 0, -1, 0);
+        fill(cache, 0, 0, 1);
+        fill(cache, 1, -1, 2);
+        fill(cache, 1, 0, 3);
+
+        // a group with a child inserted before group 1
+        cache.shiftGroups(2, 2, 1);
+        assertEntry(cache, 0, 0, -1);
+        assertEntry(cache, 1, 0, 0);
+        assertEntry(cache, 4, 2, -1);
+        assertEntry(cache, 5, 2, 0);
+
+        // group 0 and its child removed
+        cache.invalidate(0, 2);
+        cache.shiftGroups(2, -2, -1);
+        assertEntry(cache, 2, 1, -1);
+        assertEntry(cache, 3, 1, 0);
+        assertNull(cache.get(0));
+    }
+}
@@ -0,0 +1,75 @@
+package mw.ankara.expandablerecyclerview;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author masa
+ * @since 10/17/26
+ */
+public class ViewTypeRegistryTest {
+
+    @Test
+    public void kindsKeepTheirOwnTypes() {
+        ViewTypeRegistry registry = new ViewTypeRegistry();
+        int group = registry.getId(ViewTypeRegistry.KIND_GROUP, 0);
+        int child = registry.getId(ViewTypeRegistry.KIND_CHILD, 0);
+        int fixed = registry.getId(ViewTypeRegistry.KIND_FIXED, 0);
+        int holder = registry.getId(ViewTypeRegistry.KIND_HOLDER, 0);
+
+        assertEquals(0, group);
+        assertEquals(1, child);
+        assertEquals(2, fixed);
+        assertEquals(3, holder);
+        assertEquals(ViewTypeRegistry.KIND_CHILD, registry.getKind(child));
+        assertEquals(ViewTypeRegistry.KIND_HOLDER, registry.getKind(holder));
+        assertEquals(child, registry.getId(ViewTypeRegistry.KIND_CHILD, 0));
+    }
+
+    @Test
+    public void anyUserTypeRoundTrips() {
+        ViewTypeRegistry registry = new ViewTypeRegistry();
+        int[] types = {Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE};
+        for (int type : types) {
+            int id = registry.getId(ViewTypeRegistry.KIND_GROUP, type);
+            assertEquals(ViewTypeRegistry.KIND_GROUP, registry.getKind(id));
+            assertEquals(type, registry.getUserType(id));
+        }
+        for (int i = 0; i < types.length; ++i) {
+            assertEquals(i, registry.getId(ViewTypeRegistry.KIND_GROUP, types[i]));
+        }
+        assertEquals(types.length, registry.getIdCount());
+    }
+
+    /**
+     * ids stay dense and unchanged while the tables grow, checked against a map
+     */
+    @Test
+    public void idsAreDenseAndStable() {
+        ViewTypeRegistry registry = new ViewTypeRegistry();
+        Map<Long, Integer> model = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 2000; ++i) {
+            int kind = random.nextInt(4);
+            int type = random.nextInt(200) - 100;
+            long key = ((long) kind << 32) | (type & 0xffffffffL);
+
+            int id = registry.getId(kind, type);
+            Integer expected = model.get(key);
+            if (expected == null) {
+                assertEquals(model.size(), id);
+                model.put(key, id);
+            } else {
+                assertEquals(expected.intValue(), id);
+            }
+            assertEquals(kind, registry.getKind(id));
+            assertEquals(type, registry.getUserType(id));
+        }
+        assertEquals(model.size(), registry.getIdCount());
+    }
+}
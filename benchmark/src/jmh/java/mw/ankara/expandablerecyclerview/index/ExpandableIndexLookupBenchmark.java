@@ -0,0 +1,79 @@
+package mw.ankara.expandablerecyclerview.index;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flat position to group and child, the lookup behind every getItemViewType and
+ * onBindViewHolder. Random lookups stand for jumps and fast scrolling, sequential ones for
+ * plain scrolling.
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExpandableIndexLookupBenchmark {
+
+    private static final int POSITION_MASK = 4096 - 1;
+
+    @Param({"1000", "100000", "1000000"})
+    public int groupCount;
+
+    @Param({IndexFixtures.UNIFORM, IndexFixtures.SKEWED})
+    public String distribution;
+
+    private ExpandableIndex mIndex;
+
+    private final int[] mRandomPositions = new int[POSITION_MASK + 1];
+
+    private int mNext;
+
+    private int mSequentialPosition;
+
+    @Setup
+    public void setUp() {
+        Random random = IndexFixtures.newRandom();
+        mIndex = IndexFixtures.newIndex(IndexFixtures.childCounts(groupCount, distribution, random),
+                IndexFixtures.expanded(groupCount, random));
+
+        final int total = mIndex.getTotal();
+        for (int i = 0; i < mRandomPositions.length; ++i) {
+            mRandomPositions[i] = random.nextInt(total);
+        }
+        // builds the tree
+        mIndex.findGroup(0);
+    }
+
+    @Benchmark
+    public int randomLookup() {
+        return lookup(mRandomPositions[mNext++ & POSITION_MASK]);
+    }
+
+    @Benchmark
+    public int sequentialLookup() {
+        int position = mSequentialPosition;
+        mSequentialPosition = position + 1 == mIndex.getTotal() ? 0 : position + 1;
+        return lookup(position);
+    }
+
+    /**
+     * same steps as the adapter's binary search
+     *
+     * @return child of the position, -1 for a group
+     */
+    private int lookup(int position) {
+        int group = mIndex.getGroupAt(position);
+        return position - mIndex.getGroupPosition(group) - 1;
+    }
+}
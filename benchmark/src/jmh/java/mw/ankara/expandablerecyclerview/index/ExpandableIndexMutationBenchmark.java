@@ -0,0 +1,88 @@
+package mw.ankara.expandablerecyclerview.index;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Structural changes at the head, middle and tail of the groups, each followed by the lookup
+ * RecyclerView makes right after it, so the cost of a lazy tree rebuild is counted too. Every
+ * op undoes itself to keep the layout steady.
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExpandableIndexMutationBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int groupCount;
+
+    @Param({IndexFixtures.UNIFORM, IndexFixtures.SKEWED})
+    public String distribution;
+
+    @Param({"HEAD", "MIDDLE", "TAIL"})
+    public String where;
+
+    private ExpandableIndex mIndex;
+
+    private int mGroup;
+
+    @Setup
+    public void setUp() {
+        Random random = IndexFixtures.newRandom();
+        int[] childCounts = IndexFixtures.childCounts(groupCount, distribution, random);
+        boolean[] expanded = IndexFixtures.expanded(groupCount, random);
+        mGroup = IndexFixtures.groupAt(where, groupCount);
+        // children are only shifted for an expanded group
+        expanded[mGroup] = true;
+        childCounts[mGroup] = Math.max(childCounts[mGroup], 1);
+
+        mIndex = IndexFixtures.newIndex(childCounts, expanded);
+        mIndex.findGroup(0);
+    }
+
+    @Benchmark
+    public int insertRemoveGroup() {
+        mIndex.insertGroups(mGroup, 1);
+        mIndex.setGroup(mGroup, 3, true);
+        int group = mIndex.findGroup(mIndex.getTotal() / 2);
+        mIndex.removeGroup(mGroup);
+        return group + mIndex.findGroup(mIndex.getTotal() / 2);
+    }
+
+    @Benchmark
+    public int insertRemoveChild() {
+        mIndex.addChildren(mGroup, 1);
+        int group = mIndex.findGroup(mIndex.getTotal() / 2);
+        mIndex.addChildren(mGroup, -1);
+        return group + mIndex.findGroup(mIndex.getTotal() / 2);
+    }
+
+    @Benchmark
+    public int collapseExpandGroup() {
+        mIndex.setExpanded(mGroup, false);
+        int group = mIndex.findGroup(mIndex.getTotal() / 2);
+        mIndex.setExpanded(mGroup, true);
+        return group + mIndex.findGroup(mIndex.getTotal() / 2);
+    }
+
+    @Benchmark
+    public int moveGroup() {
+        int to = mGroup == 0 ? groupCount - 1 : 0;
+        mIndex.moveGroup(mGroup, to);
+        int group = mIndex.findGroup(mIndex.getTotal() / 2);
+        mIndex.moveGroup(to, mGroup);
+        return group + mIndex.findGroup(mIndex.getTotal() / 2);
+    }
+}
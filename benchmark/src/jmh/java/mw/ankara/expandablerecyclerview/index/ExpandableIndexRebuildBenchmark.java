@@ -0,0 +1,52 @@
+package mw.ankara.expandablerecyclerview.index;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refilling the whole index and building its tree, as on a data set change, with the child
+ * counts already at hand.
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExpandableIndexRebuildBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int groupCount;
+
+    @Param({IndexFixtures.UNIFORM, IndexFixtures.SKEWED})
+    public String distribution;
+
+    private ExpandableIndex mIndex;
+
+    private int[] mChildCounts;
+
+    private boolean[] mExpanded;
+
+    @Setup
+    public void setUp() {
+        Random random = IndexFixtures.newRandom();
+        mChildCounts = IndexFixtures.childCounts(groupCount, distribution, random);
+        mExpanded = IndexFixtures.expanded(groupCount, random);
+        mIndex = IndexFixtures.newIndex(mChildCounts, mExpanded);
+    }
+
+    @Benchmark
+    public int rebuild() {
+        IndexFixtures.fill(mIndex, mChildCounts, mExpanded);
+        return mIndex.findGroup(mIndex.getTotal() - 1);
+    }
+}
@@ -0,0 +1,91 @@
+package mw.ankara.expandablerecyclerview.index;
+
+import java.util.Random;
+
+/**
+ * Group layouts shared by the benchmarks, generated from a fixed seed so runs compare.
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+final class IndexFixtures {
+
+    /**
+     * 0 to 9 children per group
+     */
+    static final String UNIFORM = "UNIFORM";
+
+    /**
+     * Pareto distributed children, most groups have none or a few and some have thousands
+     */
+    static final String SKEWED = "SKEWED";
+
+    private static final long SEED = 42;
+
+    private static final int MAX_SKEWED_CHILDREN = 10000;
+
+    private IndexFixtures() {
+    }
+
+    static Random newRandom() {
+        return new Random(SEED);
+    }
+
+    static int[] childCounts(int groupCount, String distribution, Random random) {
+        int[] childCounts = new int[groupCount];
+        for (int i = 0; i < groupCount; ++i) {
+            if (UNIFORM.equals(distribution)) {
+                childCounts[i] = random.nextInt(10);
+            } else if (SKEWED.equals(distribution)) {
+                double pareto = Math.pow(1 - random.nextDouble(), -1 / 1.2);
+                childCounts[i] = (int) Math.min(pareto - 1, MAX_SKEWED_CHILDREN);
+            } else {
+                throw new IllegalArgumentException("Unknown distribution " + distribution);
+            }
+        }
+        return childCounts;
+    }
+
+    /**
+     * @return about half of the groups expanded
+     */
+    static boolean[] expanded(int groupCount, Random random) {
+        boolean[] expanded = new boolean[groupCount];
+        for (int i = 0; i < groupCount; ++i) {
+            expanded[i] = random.nextBoolean();
+        }
+        return expanded;
+    }
+
+    static ExpandableIndex newIndex(int[] childCounts, boolean[] expanded) {
+        ExpandableIndex index = new ExpandableIndex();
+        fill(index, childCounts, expanded);
+        return index;
+    }
+
+    /**
+     * refill the index the way the adapter does on a data set change
+     */
+    static void fill(ExpandableIndex index, int[] childCounts, boolean[] expanded) {
+        final int groupCount = childCounts.length;
+        index.setGroupCount(0);
+        index.setGroupCount(groupCount);
+        for (int i = 0; i < groupCount; ++i) {
+            index.setGroup(i, childCounts[i], expanded[i]);
+        }
+    }
+
+    /**
+     * @return the group for a HEAD, MIDDLE or TAIL benchmark parameter
+     */
+    static int groupAt(String where, int groupCount) {
+        if ("HEAD".equals(where)) {
+            return 0;
+        } else if ("MIDDLE".equals(where)) {
+            return groupCount / 2;
+        } else if ("TAIL".equals(where)) {
+            return groupCount - 1;
+        }
+        throw new IllegalArgumentException("Unknown position " + where);
+    }
+}
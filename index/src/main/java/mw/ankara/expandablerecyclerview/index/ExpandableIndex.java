@@ -0,0 +1,447 @@
+package mw.ankara.expandablerecyclerview.index;
+
+/**
+ * Prefix-sum index over the groups of an expandable list, an expanded group takes
+ * <code>1 + childCount</code> flat positions and a collapsed one takes a single position.
+ * Backed by a Fenwick tree, so resizing, expanding or collapsing a group and mapping a flat
+ * position back to its group are all O(log G).
+ * <p>
+ * <p>Flat positions count the groups and children only, item positions count the headers
+ * before them and the footers after them as well.</p>
+ * <p>
+ * <p>Plain Java, the list view and a server paging the same groups can share it.</p>
+ * <p>
+ * <p>Inserting, removing or moving groups shifts the arrays, an O(G) copy, and only marks the
+ * tree stale from the first group touched on. The next lookup which needs it rebuilds the stale
+ * nodes, O(G - g + log G) for a change at group g, so appending groups stays cheap.</p>
+ * <p>
+ * <p>The layout is kept in growable arrays, 9 bytes per group: a 4 bytes child count, a 1 byte
+ * flag and a 4 bytes tree node. 100k groups take 900KB (~0.86MiB), against 2.0MB for an
+ * <code>ArrayList</code> of two-int objects on ART (16 bytes per object plus a 4 bytes
+ * reference), and the arrays are reused across {@link #setGroupCount}.</p>
+ *
+ * @author masa
+ * @since 10/17/26
+ */
+public final class ExpandableIndex {
+
+    /**
+     * child count of a collapsed group which has never been asked for it
+     */
+    public static final int UNKNOWN = -1;
+
+    /**
+     * item position of an item which is not shown
+     */
+    public static final int NO_POSITION = -1;
+
+    /**
+     * item types, the same values as the position types of the list
+     */
+    public static final int TYPE_HEADER = -2;
+    public static final int TYPE_FOOTER = -1;
+    public static final int TYPE_GROUP = 0;
+    public static final int TYPE_CHILD = 1;
+
+    private static final byte FLAG_EXPANDED = 1;
+
+    /**
+     * collapsed until its child count is resolved, then expanded. The child count slot holds
+     * the estimated child count meanwhile.
+     */
+    private static final byte FLAG_PENDING = 2;
+
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * child count of every group, {@link #UNKNOWN} is only allowed for collapsed groups
+     */
+    private int[] mChildCounts = new int[0];
+
+    private byte[] mFlags = new byte[0];
+
+    /**
+     * 1-based Fenwick tree over the group sizes
+     */
+    private int[] mTree = new int[1];
+
+    private int mGroupCount;
+
+    private int mHeaderCount;
+
+    private int mFooterCount;
+
+    private int mTotal;
+
+    /**
+     * estimated child counts of all pending groups
+     */
+    private int mPendingChildCount;
+
+    /**
+     * tree nodes covering groups at and after this one are stale
+     */
+    private int mDirtyFrom;
+
+    /**
+     * truncate to or append collapsed groups of unknown child count up to
+     * <code>groupCount</code>, the kept groups keep their state
+     */
+    public void setGroupCount(int groupCount) {
+        ensureCapacity(groupCount);
+        for (int i = groupCount; i < mGroupCount; ++i) {
+            mTotal -= getGroupSize(i);
+            mPendingChildCount -= getPendingEstimate(i);
+        }
+        for (int i = mGroupCount; i < groupCount; ++i) {
+            mChildCounts[i] = UNKNOWN;
+            mFlags[i] = 0;
+            ++mTotal;
+        }
+
+        // the groups kept before the appended ones are still covered right
+        mDirtyFrom = Math.min(mDirtyFrom, Math.min(mGroupCount, groupCount));
+        mGroupCount = groupCount;
+    }
+
+    /**
+     * overwrite a group without updating the tree, meant for filling the whole index after
+     * {@link #setGroupCount}
+     */
+    public void setGroup(int group, int childCount, boolean expanded) {
+        mTotal -= getGroupSize(group);
+        mPendingChildCount -= getPendingEstimate(group);
+        mChildCounts[group] = childCount;
+        mFlags[group] = expanded ? FLAG_EXPANDED : 0;
+        mTotal += getGroupSize(group);
+
+        mDirtyFrom = Math.min(mDirtyFrom, group);
+    }
+
+    /**
+     * overwrite a group as pending without updating the tree, like {@link #setGroup}
+     *
+     * @param estimatedChildCount used for sizing the scrollbar until the group is resolved
+     */
+    public void setPendingGroup(int group, int estimatedChildCount) {
+        setGroup(group, estimatedChildCount, false);
+        mFlags[group] = FLAG_PENDING;
+        mPendingChildCount += estimatedChildCount;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mChildCounts.length) {
+            capacity = Math.max(capacity, Math.max(MIN_CAPACITY, mChildCounts.length * 3 / 2));
+
+            int[] childCounts = new int[capacity];
+            System.arraycopy(mChildCounts, 0, childCounts, 0, mGroupCount);
+            mChildCounts = childCounts;
+
+            byte[] flags = new byte[capacity];
+            System.arraycopy(mFlags, 0, flags, 0, mGroupCount);
+            mFlags = flags;
+
+            mTree = new int[capacity + 1];
+            mDirtyFrom = 0;
+        }
+    }
+
+    public int getGroupCount() {
+        return mGroupCount;
+    }
+
+    /**
+     * @return flat positions taken by all groups and their visible children
+     */
+    public int getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * @return flat positions taken by the group and its visible children
+     */
+    public int getGroupSize(int group) {
+        return (mFlags[group] & FLAG_EXPANDED) != 0 ? mChildCounts[group] + 1 : 1;
+    }
+
+    /**
+     * @return child count of the group, may be {@link #UNKNOWN} for a collapsed group
+     */
+    public int getChildCount(int group) {
+        return (mFlags[group] & FLAG_PENDING) != 0 ? UNKNOWN : mChildCounts[group];
+    }
+
+    public boolean isExpanded(int group) {
+        return (mFlags[group] & FLAG_EXPANDED) != 0;
+    }
+
+    /**
+     * @return true if the group waits for its child count to be expanded, it takes a single
+     * position meanwhile
+     */
+    public boolean isPending(int group) {
+        return (mFlags[group] & FLAG_PENDING) != 0;
+    }
+
+    /**
+     * @return estimated children of all pending groups, not taking any position yet
+     */
+    public int getPendingChildCount() {
+        return mPendingChildCount;
+    }
+
+    private int getPendingEstimate(int group) {
+        return (mFlags[group] & FLAG_PENDING) != 0 ? mChildCounts[group] : 0;
+    }
+
+    /**
+     * expand a pending group with its real child count
+     */
+    public void resolvePending(int group, int childCount) {
+        mPendingChildCount -= mChildCounts[group];
+        mFlags[group] &= ~FLAG_PENDING;
+        mChildCounts[group] = childCount;
+        setExpanded(group, true);
+    }
+
+    /**
+     * keep a pending group collapsed, its child count stays unknown
+     */
+    public void cancelPending(int group) {
+        mPendingChildCount -= mChildCounts[group];
+        mFlags[group] &= ~FLAG_PENDING;
+        mChildCounts[group] = UNKNOWN;
+    }
+
+    /**
+     * @return flat position of the group item
+     */
+    public int getGroupStart(int group) {
+        if (group > mDirtyFrom) {
+            rebuild();
+        }
+
+        int sum = 0;
+        for (int i = group; i > 0; i -= i & -i) {
+            sum += mTree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * header and footer part
+     */
+    public void setHeaderCount(int headerCount) {
+        mHeaderCount = headerCount;
+    }
+
+    public int getHeaderCount() {
+        return mHeaderCount;
+    }
+
+    public void setFooterCount(int footerCount) {
+        mFooterCount = footerCount;
+    }
+
+    public int getFooterCount() {
+        return mFooterCount;
+    }
+
+    /**
+     * @return items taken by the headers, the groups and their visible children and the footers
+     */
+    public int getItemCount() {
+        return mHeaderCount + mTotal + mFooterCount;
+    }
+
+    /**
+     * @return one of the TYPE constants for the item <code>position</code>
+     */
+    public int getItemType(int position) {
+        if (position < mHeaderCount) {
+            return TYPE_HEADER;
+        } else if (position >= mHeaderCount + mTotal) {
+            return TYPE_FOOTER;
+        }
+
+        final int flatPosition = position - mHeaderCount;
+        return getGroupStart(findGroup(flatPosition)) == flatPosition ? TYPE_GROUP : TYPE_CHILD;
+    }
+
+    /**
+     * @return item position of the group
+     */
+    public int getGroupPosition(int group) {
+        return mHeaderCount + getGroupStart(group);
+    }
+
+    /**
+     * @return item position of the child, {@link #NO_POSITION} if it is not shown
+     */
+    public int getChildPosition(int group, int child) {
+        if (child < 0 || child + 1 >= getGroupSize(group)) {
+            return NO_POSITION;
+        }
+        return getGroupPosition(group) + 1 + child;
+    }
+
+    /**
+     * @return the group of the group or child item at <code>position</code>, -1 for headers and
+     * footers
+     */
+    public int getGroupAt(int position) {
+        final int flatPosition = position - mHeaderCount;
+        if (flatPosition < 0 || flatPosition >= mTotal) {
+            return -1;
+        }
+        return findGroup(flatPosition);
+    }
+
+    /**
+     * binary descent on the tree
+     *
+     * @return the group which takes the flat <code>position</code>
+     */
+    public int findGroup(int position) {
+        if (mDirtyFrom < mGroupCount) {
+            rebuild();
+        }
+
+        final int[] tree = mTree;
+        int group = 0;
+        for (int step = Integer.highestOneBit(mGroupCount); step != 0; step >>= 1) {
+            int next = group + step;
+            if (next <= mGroupCount && tree[next] <= position) {
+                group = next;
+                position -= tree[next];
+            }
+        }
+        return group;
+    }
+
+    /**
+     * add <code>delta</code> children to the group, a group of unknown child count stays unknown,
+     * so does a pending one
+     */
+    public void addChildren(int group, int delta) {
+        if (getChildCount(group) != UNKNOWN) {
+            mChildCounts[group] += delta;
+            if (isExpanded(group)) {
+                resize(group, delta);
+            }
+        }
+    }
+
+    public void setChildCount(int group, int childCount) {
+        int oldSize = getGroupSize(group);
+        mChildCounts[group] = childCount;
+        resize(group, getGroupSize(group) - oldSize);
+    }
+
+    /**
+     * the child count must be known before expanding
+     */
+    public void setExpanded(int group, boolean expanded) {
+        int oldSize = getGroupSize(group);
+        if (expanded) {
+            mFlags[group] |= FLAG_EXPANDED;
+        } else {
+            mFlags[group] &= ~FLAG_EXPANDED;
+        }
+        resize(group, getGroupSize(group) - oldSize);
+    }
+
+    private void resize(int group, int delta) {
+        mTotal += delta;
+
+        if (group < mDirtyFrom) {
+            for (int i = group + 1; i <= mGroupCount; i += i & -i) {
+                mTree[i] += delta;
+            }
+        }
+    }
+
+    /**
+     * make room for <code>count</code> collapsed groups of unknown child count at
+     * <code>groupStart</code>, meant to be filled by {@link #setGroup}
+     */
+    public void insertGroups(int groupStart, int count) {
+        ensureCapacity(mGroupCount + count);
+        System.arraycopy(mChildCounts, groupStart, mChildCounts, groupStart + count,
+                mGroupCount - groupStart);
+        System.arraycopy(mFlags, groupStart, mFlags, groupStart + count, mGroupCount - groupStart);
+        for (int i = groupStart; i < groupStart + count; ++i) {
+            mChildCounts[i] = UNKNOWN;
+            mFlags[i] = 0;
+        }
+
+        mGroupCount += count;
+        mTotal += count;
+        mDirtyFrom = Math.min(mDirtyFrom, groupStart);
+    }
+
+    public void removeGroups(int groupStart, int count) {
+        for (int i = groupStart; i < groupStart + count; ++i) {
+            mTotal -= getGroupSize(i);
+            mPendingChildCount -= getPendingEstimate(i);
+        }
+
+        mGroupCount -= count;
+        System.arraycopy(mChildCounts, groupStart + count, mChildCounts, groupStart,
+                mGroupCount - groupStart);
+        System.arraycopy(mFlags, groupStart + count, mFlags, groupStart, mGroupCount - groupStart);
+
+        mDirtyFrom = Math.min(mDirtyFrom, groupStart);
+    }
+
+    public void removeGroup(int group) {
+        removeGroups(group, 1);
+    }
+
+    public void moveGroup(int fromGroup, int toGroup) {
+        int childCount = mChildCounts[fromGroup];
+        byte flags = mFlags[fromGroup];
+        if (fromGroup < toGroup) {
+            System.arraycopy(mChildCounts, fromGroup + 1, mChildCounts, fromGroup,
+                    toGroup - fromGroup);
+            System.arraycopy(mFlags, fromGroup + 1, mFlags, fromGroup, toGroup - fromGroup);
+        } else {
+            System.arraycopy(mChildCounts, toGroup, mChildCounts, toGroup + 1,
+                    fromGroup - toGroup);
+            System.arraycopy(mFlags, toGroup, mFlags, toGroup + 1, fromGroup - toGroup);
+        }
+        mChildCounts[toGroup] = childCount;
+        mFlags[toGroup] = flags;
+
+        mDirtyFrom = Math.min(mDirtyFrom, Math.min(fromGroup, toGroup));
+    }
+
+    /**
+     * rebuild the nodes after {@link #mDirtyFrom}, the ones covering a stale group, in
+     * O(G - mDirtyFrom + log G)
+     */
+    private void rebuild() {
+        final int[] tree = mTree;
+        final int count = mGroupCount;
+        final int dirtyFrom = mDirtyFrom;
+
+        for (int i = dirtyFrom + 1; i <= count; ++i) {
+            tree[i] = getGroupSize(i - 1);
+        }
+        // the clean nodes under a stale one are the ones summing up the groups before it
+        for (int i = dirtyFrom; i > 0; i -= i & -i) {
+            int parent = i + (i & -i);
+            if (parent <= count) {
+                tree[parent] += tree[i];
+            }
+        }
+        for (int i = dirtyFrom + 1; i <= count; ++i) {
+            int parent = i + (i & -i);
+            if (parent <= count) {
+                tree[parent] += tree[i];
+            }
+        }
+
+        mDirtyFrom = count;
+    }
+}
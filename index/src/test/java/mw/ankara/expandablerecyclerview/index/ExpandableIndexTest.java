@@ -0,0 +1,287 @@
+package mw.ankara.expandablerecyclerview.index;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author masa
+ * @since 10/17/26
+ */
+public class ExpandableIndexTest {
+
+    private ExpandableIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new ExpandableIndex();
+    }
+
+    /**
+     * fill the index with the child counts, negative counts for collapsed groups
+     */
+    private void fill(int... childCounts) {
+        mIndex.setGroupCount(childCounts.length);
+        for (int i = 0; i < childCounts.length; ++i) {
+            mIndex.setGroup(i, Math.abs(childCounts[i]), childCounts[i] >= 0);
+        }
+    }
+
+    @Test
+    public void emptyIndexHasNoItems() {
+        assertEquals(0, mIndex.getGroupCount());
+        assertEquals(0, mIndex.getItemCount());
+        assertEquals(-1, mIndex.getGroupAt(0));
+    }
+
+    @Test
+    public void expandedGroupsTakeTheirChildren() {
+        fill(2, -3, 0, 1);
+
+        assertEquals(1 + 2 + 1 + 1 + 1 + 1, mIndex.getTotal());
+        assertEquals(0, mIndex.getGroupPosition(0));
+        assertEquals(3, mIndex.getGroupPosition(1));
+        assertEquals(4, mIndex.getGroupPosition(2));
+        assertEquals(5, mIndex.getGroupPosition(3));
+    }
+
+    @Test
+    public void newGroupsAreCollapsedWithUnknownChildCount() {
+        mIndex.setGroupCount(3);
+
+        assertEquals(3, mIndex.getTotal());
+        assertFalse(mIndex.isExpanded(1));
+        assertEquals(ExpandableIndex.UNKNOWN, mIndex.getChildCount(1));
+    }
+
+    @Test
+    public void headersAndFootersOffsetPositions() {
+        fill(2, -1);
+        mIndex.setHeaderCount(2);
+        mIndex.setFooterCount(1);
+
+        assertEquals(2 + 4 + 1, mIndex.getItemCount());
+        assertEquals(ExpandableIndex.TYPE_HEADER, mIndex.getItemType(1));
+        assertEquals(ExpandableIndex.TYPE_GROUP, mIndex.getItemType(2));
+        assertEquals(ExpandableIndex.TYPE_CHILD, mIndex.getItemType(3));
+        assertEquals(ExpandableIndex.TYPE_GROUP, mIndex.getItemType(5));
+        assertEquals(ExpandableIndex.TYPE_FOOTER, mIndex.getItemType(6));
+
+        assertEquals(-1, mIndex.getGroupAt(1));
+        assertEquals(0, mIndex.getGroupAt(4));
+        assertEquals(1, mIndex.getGroupAt(5));
+        assertEquals(-1, mIndex.getGroupAt(6));
+        assertEquals(5, mIndex.getGroupPosition(1));
+    }
+
+    @Test
+    public void childPositionOfHiddenChildIsNoPosition() {
+        fill(2, -3);
+
+        assertEquals(2, mIndex.getChildPosition(0, 1));
+        assertEquals(ExpandableIndex.NO_POSITION, mIndex.getChildPosition(0, 2));
+        assertEquals(ExpandableIndex.NO_POSITION, mIndex.getChildPosition(1, 0));
+    }
+
+    @Test
+    public void expandAndCollapseResizeTheGroup() {
+        fill(-3, 1);
+
+        mIndex.setExpanded(0, true);
+        assertEquals(6, mIndex.getTotal());
+        assertEquals(4, mIndex.getGroupPosition(1));
+
+        mIndex.setExpanded(0, false);
+        assertEquals(3, mIndex.getTotal());
+        assertEquals(1, mIndex.getGroupPosition(1));
+    }
+
+    @Test
+    public void childrenOfUnknownGroupStayUnknown() {
+        mIndex.setGroupCount(1);
+
+        mIndex.addChildren(0, 2);
+        assertEquals(ExpandableIndex.UNKNOWN, mIndex.getChildCount(0));
+        assertEquals(1, mIndex.getTotal());
+    }
+
+    @Test
+    public void insertedGroupsShiftTheFollowingOnes() {
+        fill(1, 1);
+
+        mIndex.insertGroups(1, 2);
+        mIndex.setGroup(1, 3, true);
+        mIndex.setGroup(2, 0, false);
+
+        assertEquals(4, mIndex.getGroupCount());
+        assertEquals(2, mIndex.getGroupPosition(1));
+        assertEquals(6, mIndex.getGroupPosition(2));
+        assertEquals(7, mIndex.getGroupPosition(3));
+        assertEquals(9, mIndex.getTotal());
+    }
+
+    @Test
+    public void removedGroupsTakeTheirChildren() {
+        fill(1, 4, -2, 0);
+
+        mIndex.removeGroups(1, 2);
+
+        assertEquals(2, mIndex.getGroupCount());
+        assertEquals(3, mIndex.getTotal());
+        assertEquals(2, mIndex.getGroupPosition(1));
+    }
+
+    @Test
+    public void movedGroupKeepsItsState() {
+        fill(2, -1, 0);
+
+        mIndex.moveGroup(0, 2);
+
+        assertFalse(mIndex.isExpanded(0));
+        assertTrue(mIndex.isExpanded(2));
+        assertEquals(2, mIndex.getChildCount(2));
+        assertEquals(2, mIndex.getGroupPosition(2));
+    }
+
+    @Test
+    public void pendingGroupTakesOnePositionUntilResolved() {
+        fill(1, -1);
+        mIndex.setPendingGroup(1, 10);
+
+        assertTrue(mIndex.isPending(1));
+        assertEquals(10, mIndex.getPendingChildCount());
+        assertEquals(ExpandableIndex.UNKNOWN, mIndex.getChildCount(1));
+        assertEquals(3, mIndex.getTotal());
+
+        mIndex.resolvePending(1, 4);
+        assertFalse(mIndex.isPending(1));
+        assertTrue(mIndex.isExpanded(1));
+        assertEquals(0, mIndex.getPendingChildCount());
+        assertEquals(7, mIndex.getTotal());
+    }
+
+    @Test
+    public void cancelledPendingGroupStaysCollapsed() {
+        mIndex.setGroupCount(1);
+        mIndex.setPendingGroup(0, 5);
+
+        mIndex.cancelPending(0);
+        assertFalse(mIndex.isPending(0));
+        assertFalse(mIndex.isExpanded(0));
+        assertEquals(0, mIndex.getPendingChildCount());
+    }
+
+    @Test
+    public void truncatingDropsPendingEstimates() {
+        mIndex.setGroupCount(3);
+        mIndex.setPendingGroup(2, 5);
+
+        mIndex.setGroupCount(2);
+        assertEquals(0, mIndex.getPendingChildCount());
+        assertEquals(2, mIndex.getTotal());
+    }
+
+    /**
+     * random mutations checked against a plain list of group sizes
+     */
+    @Test
+    public void matchesNaiveModel() {
+        Random random = new Random(7);
+        List<int[]> model = new ArrayList<>();
+
+        for (int op = 0; op < 5000; ++op) {
+            randomOperation(model, random);
+            assertMatches(model, random);
+        }
+    }
+
+    /**
+     * several changes between lookups, the tree is rebuilt from the first stale group on
+     */
+    @Test
+    public void rebuildsFromTheFirstStaleGroup() {
+        Random random = new Random(11);
+        List<int[]> model = new ArrayList<>();
+
+        for (int round = 0; round < 2000; ++round) {
+            for (int op = random.nextInt(4); op >= 0; --op) {
+                if (random.nextInt(8) == 0) {
+                    int groupCount = random.nextInt(model.size() + 8);
+                    while (model.size() > groupCount) {
+                        model.remove(model.size() - 1);
+                    }
+                    while (model.size() < groupCount) {
+                        model.add(new int[]{ExpandableIndex.UNKNOWN, 0});
+                    }
+                    mIndex.setGroupCount(groupCount);
+                } else {
+                    randomOperation(model, random);
+                }
+            }
+
+            assertMatches(model, random);
+        }
+    }
+
+    private void randomOperation(List<int[]> model, Random random) {
+        int groupCount = model.size();
+        int kind = groupCount == 0 ? 0 : random.nextInt(5);
+        if (kind == 0) {
+            int group = random.nextInt(groupCount + 1);
+            int childCount = random.nextInt(5);
+            boolean expanded = random.nextBoolean();
+            model.add(group, new int[]{childCount, expanded ? 1 : 0});
+            mIndex.insertGroups(group, 1);
+            mIndex.setGroup(group, childCount, expanded);
+        } else if (kind == 1) {
+            int group = random.nextInt(groupCount);
+            model.remove(group);
+            mIndex.removeGroup(group);
+        } else if (kind == 2) {
+            int group = random.nextInt(groupCount);
+            int[] state = model.get(group);
+            if (state[0] == ExpandableIndex.UNKNOWN) {
+                state[0] = 0;
+                mIndex.setChildCount(group, 0);
+            }
+            state[1] ^= 1;
+            mIndex.setExpanded(group, state[1] == 1);
+        } else if (kind == 3) {
+            int group = random.nextInt(groupCount);
+            int[] state = model.get(group);
+            if (state[0] != ExpandableIndex.UNKNOWN) {
+                state[0] += 1;
+            }
+            mIndex.addChildren(group, 1);
+        } else {
+            int from = random.nextInt(groupCount);
+            int to = random.nextInt(groupCount);
+            model.add(to, model.remove(from));
+            mIndex.moveGroup(from, to);
+        }
+    }
+
+    private void assertMatches(List<int[]> model, Random random) {
+        int position = 0;
+        for (int group = 0; group < model.size(); ++group) {
+            assertEquals(position, mIndex.getGroupPosition(group));
+            int[] state = model.get(group);
+            position += state[1] == 1 ? state[0] + 1 : 1;
+        }
+        assertEquals(position, mIndex.getTotal());
+
+        if (position > 0) {
+            int probe = random.nextInt(position);
+            int group = mIndex.getGroupAt(probe);
+            assertTrue(mIndex.getGroupPosition(group) <= probe);
+            assertTrue(probe < mIndex.getGroupPosition(group) + mIndex.getGroupSize(group));
+        }
+    }
+}